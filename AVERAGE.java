@@ -0,0 +1,3 @@
+public enum AVERAGE {
+	MEAN, MEDIAN, WEIGHTED;
+}
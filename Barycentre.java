@@ -0,0 +1,250 @@
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+
+/**
+ * Barycentre passes over the clause and variable orders of a formula. A pass
+ * moves every clause (or variable) to the average position of its variables
+ * (or clauses) in the other order, by sorting on those averages. The average
+ * is the mean by default; the median, or a mean weighting each neighbour by
+ * one over its degree, can be used instead (see <code>AVERAGE</code>).
+ *
+ * Averages are computed in parallel into reused buffers, and sorted with a
+ * parallel LSD radix sort on the bits of the averages, carrying the element
+ * along. The sort is stable, so elements with equal averages keep their
+ * relative order from the previous pass. Elements without literals have no
+ * average and are moved to the end, in their previous relative order.
+ */
+public class Barycentre {
+    private static final int RADIX_BITS = 8;
+    private static final int BUCKETS = 1 << RADIX_BITS;
+    private static final int MIN_CHUNK = 1 << 14; // smallest part sorted by one thread
+
+    final IncidenceGraph graph;
+    private final int chunks;  // number of parts sorted in parallel
+    private long[] keys;       // bits of the average of each element
+    private int[] elements;    // previous position of the element of each key
+    private long[] keysTmp;
+    private int[] elementsTmp;
+    private final int[][] counts; // number of each digit in each chunk
+    private final int maxDegree;
+    private int[][] scratch;      // neighbour positions of each chunk, for MEDIAN
+    private final int[] width;    // variables opening/closing at each clause position
+
+    AVERAGE variant = AVERAGE.MEAN;
+
+    public Barycentre(IncidenceGraph graph) {
+        this.graph = graph;
+        int n = Math.max(graph.variables, graph.clauses);
+        this.chunks = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(),
+                n / MIN_CHUNK));
+        this.keys = new long[n];
+        this.elements = new int[n];
+        this.keysTmp = new long[n];
+        this.elementsTmp = new int[n];
+        this.counts = new int[chunks][BUCKETS];
+        this.width = new int[graph.clauses + 2];
+
+        int max = 0;
+        for (int c = 1; c <= graph.clauses; c++) {
+            max = Math.max(max, graph.clauseDegree(c));
+        }
+        for (int v = 1; v <= graph.variables; v++) {
+            max = Math.max(max, graph.varDegree(v));
+        }
+        this.maxDegree = max;
+    }
+
+    /**
+     * Reorders <code>clauseOrder[1..clauses]</code> by the average position of
+     * the variables of each clause in the variable order
+     * @return sum over all clauses of the distance moved in the clause order
+     */
+    public long orderClauses(int[] clauseOrder, int[] varOrderPosition) {
+        return reorder(clauseOrder, graph.clauses, graph.claOffsets, graph.claVars,
+                graph.varOffsets, varOrderPosition);
+    }
+
+    /**
+     * Reorders <code>varOrder[1..variables]</code> by the average position of
+     * the clauses of each variable in the clause order
+     * @return sum over all variables of the distance moved in the variable order
+     */
+    public long orderVariables(int[] varOrder, int[] clauseOrderPosition) {
+        return reorder(varOrder, graph.variables, graph.varOffsets, graph.varClauses,
+                graph.claOffsets, clauseOrderPosition);
+    }
+
+    /**
+     * A cheap estimate of k for the current clause order: the largest number
+     * of variables having clauses on both sides of a cut of the clause order
+     */
+    public int cutWidth(int[] clauseOrderPosition) {
+        Arrays.fill(width, 0);
+        for (int var = 1; var <= graph.variables; var++) {
+            int first = Integer.MAX_VALUE;
+            int last = 0;
+            for (int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++) {
+                int pos = clauseOrderPosition[graph.varClauses[j]];
+                first = Math.min(first, pos);
+                last = Math.max(last, pos);
+            }
+            if (first < last) {
+                // Crosses the cuts after positions first..last-1
+                width[first]++;
+                width[last]--;
+            }
+        }
+        int max = 0;
+        int open = 0;
+        for (int pos = 1; pos <= graph.clauses; pos++) {
+            open += width[pos];
+            max = Math.max(max, open);
+        }
+        return max;
+    }
+
+    /**
+     * Sorts order[1..n] by the average position of the neighbours of each
+     * element, which are adjacent[offsets[e]..offsets[e+1]-1] for element e.
+     * The neighbours of the neighbours start at adjacentOffsets.
+     */
+    private long reorder(int[] order, int n, int[] offsets, int[] adjacent,
+            int[] adjacentOffsets, int[] positions) {
+        if (variant == AVERAGE.MEDIAN && scratch == null) {
+            scratch = new int[chunks][maxDegree];
+        }
+        forEachChunk(n, (from, to) -> {
+            int[] sorted = (variant == AVERAGE.MEDIAN) ? scratch[from / chunkSize(n)] : null;
+            for (int i = from; i < to; i++) {
+                keys[i] = key(order[i+1], offsets, adjacent, adjacentOffsets, positions, sorted);
+                elements[i] = i;
+            }
+        });
+        sort(n);
+
+        long displacement = 0;
+        for (int i = 0; i < n; i++) {
+            elementsTmp[i] = order[elements[i]+1];
+            displacement += Math.abs(i - elements[i]);
+        }
+        System.arraycopy(elementsTmp, 0, order, 1, n);
+        return displacement;
+    }
+
+    /**
+     * Sort key of element e, the bits of the mean, median or weighted mean
+     * position of its neighbours. The bits of a positive double order the
+     * same way as the double.
+     */
+    private long key(int e, int[] offsets, int[] adjacent, int[] adjacentOffsets,
+            int[] positions, int[] sorted) {
+        int from = offsets[e];
+        int degree = offsets[e+1] - from;
+        if (degree == 0) return Long.MAX_VALUE;
+
+        double average;
+        switch (variant) {
+        case MEDIAN:
+            for (int j = 0; j < degree; j++) {
+                sorted[j] = positions[adjacent[from + j]];
+            }
+            Arrays.sort(sorted, 0, degree);
+            average = (sorted[(degree - 1) / 2] + sorted[degree / 2]) / 2.0;
+            break;
+        case WEIGHTED:
+            // Neighbours with fewer neighbours of their own pull harder
+            double tot = 0;
+            double weights = 0;
+            for (int j = from; j < from + degree; j++) {
+                int a = adjacent[j];
+                double weight = 1.0 / (adjacentOffsets[a+1] - adjacentOffsets[a]);
+                tot += weight * positions[a];
+                weights += weight;
+            }
+            average = tot / weights;
+            break;
+        default:
+            long sum = 0;
+            for (int j = from; j < from + degree; j++) {
+                sum += positions[adjacent[j]];
+            }
+            average = (double) sum / degree;
+        }
+        return Double.doubleToRawLongBits(average);
+    }
+
+    /**
+     * Sorts keys[0..n-1], and elements along, one byte at a time from the
+     * lowest. Each chunk counts its digits, the counts give every chunk its
+     * own ranges of the output, and the chunks scatter into them in parallel.
+     * Bytes that are the same in all keys are skipped.
+     */
+    private void sort(int n) {
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            final int s = shift;
+            for (int[] count : counts) {
+                Arrays.fill(count, 0);
+            }
+            forEachChunk(n, (from, to) -> {
+                int[] count = counts[from / chunkSize(n)];
+                for (int i = from; i < to; i++) {
+                    count[(int) (keys[i] >>> s) & (BUCKETS - 1)]++;
+                }
+            });
+
+            // Turn the counts into the start of each chunk's range per digit
+            int start = 0;
+            boolean trivial = false;
+            for (int d = 0; d < BUCKETS; d++) {
+                int total = 0;
+                for (int c = 0; c < chunks; c++) {
+                    int count = counts[c][d];
+                    counts[c][d] = start + total;
+                    total += count;
+                }
+                if (total == n) trivial = true;
+                start += total;
+            }
+            if (trivial) continue;
+
+            forEachChunk(n, (from, to) -> {
+                int[] next = counts[from / chunkSize(n)];
+                for (int i = from; i < to; i++) {
+                    int j = next[(int) (keys[i] >>> s) & (BUCKETS - 1)]++;
+                    keysTmp[j] = keys[i];
+                    elementsTmp[j] = elements[i];
+                }
+            });
+            long[] k = keys;
+            keys = keysTmp;
+            keysTmp = k;
+            int[] e = elements;
+            elements = elementsTmp;
+            elementsTmp = e;
+        }
+    }
+
+    private int chunkSize(int n) {
+        return Math.max(1, (n + chunks - 1) / chunks);
+    }
+
+    /**
+     * Runs the given range task on the chunks of [0, n), in parallel if there
+     * is more than one
+     */
+    private void forEachChunk(int n, Range task) {
+        int size = chunkSize(n);
+        int used = (n + size - 1) / size;
+        if (used <= 1) {
+            task.run(0, n);
+            return;
+        }
+        IntStream.range(0, used).parallel()
+                .forEach(c -> task.run(c * size, Math.min(n, (c + 1) * size)));
+    }
+
+    private interface Range {
+        void run(int from, int to);
+    }
+}
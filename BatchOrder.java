@@ -0,0 +1,318 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Orders many CNF instances in one JVM. Instances are parsed and ordered
+ * concurrently by a fixed number of threads, and an instance is only started
+ * once its estimated memory fits in the budget left by the instances running.
+ * Each order is written, with its k and time in the comments, to a file named
+ * after the instance in the output directory (x.order.cnf for x.cnf, and
+ * x.gz.order.cnf for x.cnf.gz), and a summary line per instance is printed
+ * as soon as it is done. An instance that fails is reported in the summary
+ * and does not stop the others; so is an instance whose output file would be
+ * that of an instance before it in the list. If a metrics file is given, the
+ * metrics of each instance (see <code>OrderingMetrics</code>) are written to
+ * it as one line of JSON. If a cache directory is given, orders are looked
+ * up in an <code>OrderCache</code> there first, and instances found in it
+ * are written out without being parsed or ordered.
+ *
+ * Options, anywhere among the arguments: -preprocess shrinks each formula
+ * before NONE, K and PORTFOLIO (see <code>Preprocessor</code>), and
+ * -subsume, -propagate and -pure add those steps to it. -components orders
+ * the connected components of each formula apart (see <code>Components</code>).
+ * -average=MEAN|MEDIAN|WEIGHTED, -mindisplacement=&lt;per element&gt; and
+ * -checkinterval=&lt;rounds&gt; set how the barycentre rounds of K and PORTFOLIO
+ * run (see <code>OrderedCNF.setBarycentre</code>). -starts=&lt;n&gt; sets the
+ * number of starts of PORTFOLIO, 4 by default.
+ *
+ * Usage: BatchOrder &lt;directory of .cnf(.gz) files | file listing paths&gt;
+ *        &lt;output directory&gt; [ordering] [rounds] [threads] [memory budget in MB]
+ *        [metrics file] [cache directory] [cache size in MB] [options]
+ */
+public class BatchOrder {
+    // Rough bytes needed per clause or variable (order and position arrays,
+    // kClause) and per byte of input (literals in the incidence graph while
+    // it is built, at most one per two bytes of input)
+    private static final long BYTES_PER_ELEMENT = 128;
+    private static final long BYTES_PER_INPUT_BYTE = 16;
+    private static final long MB = 1 << 20;
+
+    private final File outDir;
+    private final ORDERING ordering;
+    private final int rounds;
+    private final int budgetMB;
+    private final Semaphore memory; // MB left in the budget
+    private final PrintStream out;
+    PrintStream metricsOut; // JSON lines of metrics, null for none
+    OrderCache cache;       // orders found before, null for none
+    private int failed = 0;
+    private int parseThreads = 1; // threads parsing each instance, sharing the processors
+
+    public BatchOrder(File outDir, ORDERING ordering, int rounds, int budgetMB, PrintStream out) {
+        this.outDir = outDir;
+        this.ordering = ordering;
+        this.rounds = rounds;
+        this.budgetMB = budgetMB;
+        this.memory = new Semaphore(budgetMB, true);
+        this.out = out;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        // Options start with '-', a lone "-" is the metrics file left out
+        List<String> positional = new ArrayList<>();
+        boolean preprocess = false, subsume = false, propagate = false, pure = false;
+        boolean components = false;
+        AVERAGE average = AVERAGE.MEAN;
+        double minDisplacement = 0;
+        int checkInterval = 0;
+        int starts = 4;
+        for (String arg : args) {
+            if (arg.length() < 2 || arg.charAt(0) != '-') {
+                positional.add(arg);
+            } else if (arg.equals("-preprocess")) {
+                preprocess = true;
+            } else if (arg.equals("-subsume")) {
+                preprocess = subsume = true;
+            } else if (arg.equals("-propagate")) {
+                preprocess = propagate = true;
+            } else if (arg.equals("-pure")) {
+                preprocess = pure = true;
+            } else if (arg.equals("-components")) {
+                components = true;
+            } else if (arg.startsWith("-average=")) {
+                average = AVERAGE.valueOf(arg.substring("-average=".length()));
+            } else if (arg.startsWith("-mindisplacement=")) {
+                minDisplacement = Double.parseDouble(arg.substring("-mindisplacement=".length()));
+            } else if (arg.startsWith("-checkinterval=")) {
+                checkInterval = Integer.parseInt(arg.substring("-checkinterval=".length()));
+            } else if (arg.startsWith("-starts=")) {
+                starts = Integer.parseInt(arg.substring("-starts=".length()));
+            } else {
+                System.out.println("Unknown option " + arg);
+                positional.clear(); // print the usage
+                break;
+            }
+        }
+        args = positional.toArray(new String[0]);
+        if (args.length < 2) {
+            System.out.println("Usage: BatchOrder <directory | list file> <output directory>"
+                    + " [ordering] [rounds] [threads] [memory budget in MB] [metrics file]"
+                    + " [cache directory] [cache size in MB]"
+                    + " [-preprocess] [-subsume] [-propagate] [-pure] [-components]"
+                    + " [-average=MEAN|MEDIAN|WEIGHTED] [-mindisplacement=x] [-checkinterval=n]"
+                    + " [-starts=n]");
+            return;
+        }
+        OrderedCNF.setPreprocessing(preprocess, subsume, propagate, pure);
+        OrderedCNF.setSplitComponents(components);
+        OrderedCNF.setBarycentre(average, minDisplacement, checkInterval);
+        OrderedCNF.setPortfolioSize(starts);
+        ORDERING ordering = args.length > 2 ? ORDERING.valueOf(args[2]) : ORDERING.K;
+        int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int threads = args.length > 4 ? Integer.parseInt(args[4])
+                : Runtime.getRuntime().availableProcessors();
+        int budgetMB = args.length > 5 ? Integer.parseInt(args[5])
+                : (int) (Runtime.getRuntime().maxMemory() * 3 / 4 / MB);
+
+        File outDir = new File(args[1]);
+        outDir.mkdirs();
+        BatchOrder batch = new BatchOrder(outDir, ordering, rounds, budgetMB, System.out);
+        if (args.length > 6 && !args[6].equals("-")) {
+            batch.metricsOut = new PrintStream(new FileOutputStream(args[6]), false, "US-ASCII");
+        }
+        if (args.length > 7) {
+            long cacheMB = args.length > 8 ? Long.parseLong(args[8]) : 1024;
+            batch.cache = new OrderCache(new File(args[7]), cacheMB * MB);
+        }
+        int failed = batch.run(instances(new File(args[0])), threads);
+        if (batch.metricsOut != null) batch.metricsOut.close();
+        if (failed > 0) System.exit(1);
+    }
+
+    /**
+     * The .cnf and .cnf.gz files in the given directory, or the paths listed
+     * one per line in the given file, in order
+     */
+    static List<File> instances(File input) throws IOException {
+        List<File> files = new ArrayList<>();
+        if (input.isDirectory()) {
+            File[] cnfs = input.listFiles((dir, name) ->
+                    name.endsWith(".cnf") || name.endsWith(".cnf.gz"));
+            Arrays.sort(cnfs);
+            files.addAll(Arrays.asList(cnfs));
+        } else {
+            for (String line : Files.readAllLines(input.toPath())) {
+                line = line.trim();
+                if (!line.isEmpty()) files.add(new File(line));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Orders the given instances on the given number of threads, printing the
+     * summary as they finish
+     * @return number of instances that failed
+     */
+    public int run(List<File> instances, int threads) throws InterruptedException {
+        out.println("instance\tvariables\tclauses\tmax k\tsum k\tms\tstatus");
+        long start = System.nanoTime();
+        parseThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / threads);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        Map<String, File> outputs = new HashMap<>();
+        for (File instance : instances) {
+            File first = outputs.putIfAbsent(outputName(instance), instance);
+            if (first != null) {
+                fail(instance, -1, -1, System.nanoTime(), new IOException("Output "
+                        + outputName(instance) + " is already written for " + first.getPath()));
+                continue;
+            }
+            pool.execute(() -> orderInstance(instance));
+        }
+        pool.shutdown();
+        pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+
+        long ms = (System.nanoTime() - start) / 1000000;
+        out.println(instances.size() + " instances, " + failed + " failed, " + ms + " ms");
+        return failed;
+    }
+
+    /**
+     * Orders one instance once its memory is admitted, or takes its order
+     * from the cache, and writes its order
+     */
+    private void orderInstance(File instance) {
+        long start = System.nanoTime();
+        int variables = -1;
+        int clauses = -1;
+        int admitted = 0; // MB taken from the budget
+        try {
+            DimacsReader header = new DimacsReader(instance.getPath());
+            try {
+                header.readHeader();
+                variables = header.variables;
+                clauses = header.clauses;
+            } finally {
+                header.close();
+            }
+
+            String key = null;
+            if (cache != null) {
+                key = cache.key(instance.getPath(), ordering, rounds);
+                OrderingResult cached = cache.get(key, ordering);
+                if (cached != null) {
+                    long ms = (System.nanoTime() - start) / 1000000;
+                    write(instance, cached, ms, null);
+                    done(instance, variables, clauses, cached, ms, "cached");
+                    return;
+                }
+            }
+
+            // An instance larger than the whole budget runs alone
+            long bytes = BYTES_PER_ELEMENT * ((long) variables + clauses)
+                    + BYTES_PER_INPUT_BYTE * GzipChannel.inputSize(instance);
+            int permits = (int) Math.min(budgetMB, Math.max(1, bytes / MB));
+            memory.acquire(permits);
+            admitted = permits;
+            start = System.nanoTime();
+
+            OrderedCNF cnf = OrderedCNF.parse(instance.getPath(), parseThreads);
+            cnf.quiet = true;
+            OrderingResult result = cnf.order(ordering, rounds);
+            long ms = (System.nanoTime() - start) / 1000000;
+
+            write(instance, result, ms, cnf);
+            if (cache != null) cache.put(key, result);
+            done(instance, variables, clauses, result, ms, "ok");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            fail(instance, variables, clauses, start, e);
+        } catch (Exception | OutOfMemoryError | StackOverflowError e) {
+            fail(instance, variables, clauses, start, e);
+        } finally {
+            memory.release(admitted);
+        }
+    }
+
+    /**
+     * Writes the order and the formula of the instance to the output
+     * directory. Without the parsed formula, the formula is streamed from
+     * the instance.
+     */
+    private void write(File instance, OrderingResult result, long ms, OrderedCNF cnf)
+            throws IOException {
+        DimacsWriter writer = new DimacsWriter(
+                Paths.get(outDir.getPath(), outputName(instance)).toString());
+        try {
+            writer.writeLine("c " + ordering + " max k: " + result.maxK
+                    + " sum k: " + result.sumK + " ms: " + ms);
+            if (cnf != null) {
+                cnf.write(writer, true);
+            } else {
+                DimacsReader reader = new DimacsReader(instance.getPath());
+                try {
+                    reader.readHeader();
+                    writer.writeOrder(result.order);
+                    writer.writeFormula(reader);
+                } finally {
+                    reader.close();
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * The name of the file the order of the instance is written to
+     */
+    static String outputName(File instance) {
+        return instance.getName().replaceAll("\\.cnf(\\.gz)?$", "$1") + ".order.cnf";
+    }
+
+    /**
+     * Reports an instance done, and writes its metrics
+     */
+    private void done(File instance, int variables, int clauses, OrderingResult result,
+            long ms, String status) {
+        report(instance, variables, clauses, result.maxK, result.sumK, ms, status);
+        if (metricsOut != null) {
+            String json = result.metrics.toJson();
+            String line = "{\"instance\":\"" + instance.getName().replace("\\", "\\\\")
+                    .replace("\"", "\\\"") + "\",\"maxK\":" + result.maxK
+                    + ",\"sumK\":" + result.sumK + "," + json.substring(1);
+            synchronized (metricsOut) {
+                metricsOut.println(line);
+            }
+        }
+    }
+
+    private void fail(File instance, int variables, int clauses, long start, Throwable e) {
+        synchronized (this) {
+            failed++;
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+        report(instance, variables, clauses, -1, -1, ms, "failed: " + e);
+    }
+
+    private synchronized void report(File instance, int variables, int clauses,
+            int maxK, int sumK, long ms, String status) {
+        out.println(instance.getName() + "\t" + variables + "\t" + clauses + "\t"
+                + maxK + "\t" + sumK + "\t" + ms + "\t" + status);
+        out.flush();
+    }
+}
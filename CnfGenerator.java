@@ -0,0 +1,380 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+
+/**
+ * Generates synthetic CNF formulas of a given size and structure, written as
+ * DIMACS files or built directly into an OrderedCNF through put():
+ *
+ * RANDOM   uniform random k-SAT, k distinct variables per clause
+ * GRID     one random 2-clause per edge of a rows x cols grid of variables
+ * LATTICE  the same on a torus (the grid with its edges wrapped around)
+ * PLANTED  random k-clauses whose variables lie in a sliding window of the
+ *          given width, with variables and clauses renumbered at random so
+ *          the input order hides the window
+ *
+ * The formula can come with order lines ("c ORDER:", "c_var ORDER:" and
+ * "c_cla ORDER:") for the SINGLE, DOUBLE and DOUBLEK modes. Variables are
+ * ordered by number (by window position for PLANTED), and every clause is
+ * placed right after its last variable. In that order no variable counts
+ * towards kRight, so k of a clause is the number of other variables between
+ * its first and last variable. For PLANTED that is below the window width.
+ *
+ * Every clause is computed from the seed and its number alone, so a
+ * formula is generated without keeping its clauses in memory, and the same
+ * arguments always give the same formula.
+ *
+ * Usage: CnfGenerator &lt;family&gt; &lt;output file&gt; &lt;variables | rows&gt;
+ *        &lt;clauses | cols&gt; [k] [width] [seed] [order lines: true/false]
+ */
+public class CnfGenerator {
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+
+    final FAMILY family;
+    final int variables;
+    final int clauses;
+    private final int k;      // literals per clause, RANDOM and PLANTED
+    private final int width;  // window width for PLANTED
+    private final int rows, cols; // GRID and LATTICE
+    private final long seed;
+    private int[] varLabel;    // variable number at each window position, PLANTED
+    private int[] varRank;     // window position of each variable, PLANTED
+    private int[] clauseIndex; // window index of each clause, PLANTED
+    private long state;        // random state of the clause being generated
+
+    private CnfGenerator(FAMILY family, int variables, int clauses, int k, int width,
+            int rows, int cols, long seed) {
+        this.family = family;
+        this.variables = variables;
+        this.clauses = clauses;
+        this.k = k;
+        this.width = width;
+        this.rows = rows;
+        this.cols = cols;
+        this.seed = seed;
+    }
+
+    /**
+     * Uniform random k-SAT with the given number of variables and clauses
+     */
+    public static CnfGenerator random(int variables, int clauses, int k, long seed) {
+        if (k < 1 || k > variables) {
+            throw new IllegalArgumentException("Need 1 <= k <= variables, got k = " + k);
+        }
+        return new CnfGenerator(FAMILY.RANDOM, variables, clauses, k, 0, 0, 0, seed);
+    }
+
+    /**
+     * A rows x cols grid with a clause of two random literals per edge
+     */
+    public static CnfGenerator grid(int rows, int cols, long seed) {
+        if (rows < 1 || cols < 1) {
+            throw new IllegalArgumentException("Need at least one row and column");
+        }
+        int edges = rows * (cols - 1) + (rows - 1) * cols;
+        return new CnfGenerator(FAMILY.GRID, rows * cols, edges, 2, 0, rows, cols, seed);
+    }
+
+    /**
+     * A rows x cols torus with a clause of two random literals per edge
+     */
+    public static CnfGenerator lattice(int rows, int cols, long seed) {
+        if (rows < 3 || cols < 3) {
+            throw new IllegalArgumentException("Need at least three rows and columns");
+        }
+        return new CnfGenerator(FAMILY.LATTICE, rows * cols, 2 * rows * cols, 2, 0,
+                rows, cols, seed);
+    }
+
+    /**
+     * Random k-clauses, each on a window of 'width' consecutive variables,
+     * the windows sliding evenly from the first to the last variable. The
+     * order given by the window has k below 'width'.
+     */
+    public static CnfGenerator planted(int variables, int clauses, int k, int width, long seed) {
+        if (k < 1 || width < k || width > variables) {
+            throw new IllegalArgumentException("Need 1 <= k <= width <= variables, got k = "
+                    + k + ", width = " + width);
+        }
+        CnfGenerator gen = new CnfGenerator(FAMILY.PLANTED, variables, clauses, k, width,
+                0, 0, seed);
+        Random rnd = new Random(seed);
+        gen.varLabel = identity(variables);
+        OrderedCNF.shuffleOrder(gen.varLabel, rnd);
+        gen.varRank = new int[variables + 1];
+        for (int r = 1; r <= variables; r++) {
+            gen.varRank[gen.varLabel[r]] = r;
+        }
+        gen.clauseIndex = identity(clauses);
+        OrderedCNF.shuffleOrder(gen.clauseIndex, rnd);
+        return gen;
+    }
+
+    private static int[] identity(int n) {
+        int[] a = new int[n + 1];
+        for (int i = 1; i <= n; i++) {
+            a[i] = i;
+        }
+        return a;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 4) {
+            System.out.println("Usage: CnfGenerator <RANDOM | GRID | LATTICE | PLANTED> <output file>"
+                    + " <variables | rows> <clauses | cols> [k] [width] [seed] [order lines]");
+            return;
+        }
+        FAMILY family = FAMILY.valueOf(args[0]);
+        int a = Integer.parseInt(args[2]);
+        int b = Integer.parseInt(args[3]);
+        int k = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+        int width = args.length > 5 ? Integer.parseInt(args[5]) : 4 * k;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+        boolean withOrder = args.length > 7 && Boolean.parseBoolean(args[7]);
+
+        CnfGenerator gen;
+        switch (family) {
+        case GRID:
+            gen = grid(a, b, seed);
+            break;
+        case LATTICE:
+            gen = lattice(a, b, seed);
+            break;
+        case PLANTED:
+            gen = planted(a, b, k, width, seed);
+            break;
+        default:
+            gen = random(a, b, k, seed);
+        }
+        gen.write(args[1], withOrder);
+    }
+
+    /**
+     * Writes the formula to the file at the given path, with the order lines
+     * if 'withOrder' is set
+     */
+    public void write(String path, boolean withOrder) throws IOException {
+        DimacsWriter writer = new DimacsWriter(path);
+        try {
+            write(writer, withOrder);
+        } finally {
+            writer.close();
+        }
+    }
+
+    void write(DimacsWriter writer, boolean withOrder) throws IOException {
+        writer.writeLine("c " + describe());
+        if (withOrder) {
+            writeOrderLines(writer);
+        }
+        writer.writeHeader(variables, clauses);
+        int[] literals = new int[k];
+        for (int clause = 1; clause <= clauses; clause++) {
+            writer.writeClause(literals, clause(clause, literals));
+        }
+    }
+
+    /**
+     * Builds the formula into a new OrderedCNF, with the order lines if
+     * 'withOrder' is set, ready to be ordered
+     */
+    public OrderedCNF build(boolean withOrder) {
+        OrderedCNF cnf = new OrderedCNF(variables, clauses);
+        int[] literals = new int[k];
+        for (int clause = 1; clause <= clauses; clause++) {
+            int length = clause(clause, literals);
+            for (int j = 0; j < length; j++) {
+                cnf.put(clause, Math.abs(literals[j]), literals[j] > 0);
+            }
+        }
+        cnf.graph();
+        if (withOrder) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DimacsWriter writer = new DimacsWriter(Channels.newChannel(bytes));
+                writeOrderLines(writer);
+                writer.flush();
+                for (String line : bytes.toString(StandardCharsets.US_ASCII).split("\n")) {
+                    if (line.startsWith(OrderedCNF.ORDER_STRING)) cnf.orderLine = line;
+                    else if (line.startsWith(OrderedCNF.ORDER_VAR_STRING)) cnf.varOrderLine = line;
+                    else if (line.startsWith(OrderedCNF.ORDER_CLA_STRING)) cnf.claOrderLine = line;
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // cannot happen in memory
+            }
+        }
+        return cnf;
+    }
+
+    private String describe() {
+        switch (family) {
+        case GRID:
+        case LATTICE:
+            return family + " " + rows + " x " + cols + " seed " + seed;
+        case PLANTED:
+            return family + " k = " + k + " width = " + width + " seed " + seed;
+        default:
+            return family + " k = " + k + " seed " + seed;
+        }
+    }
+
+    /**
+     * Writes the order lines: variables by rank, every clause after its
+     * highest ranked variable (clauses with the same one in number order)
+     */
+    private void writeOrderLines(DimacsWriter writer) throws IOException {
+        // Counting sort of the clauses on their highest ranked variable
+        int[] last = new int[clauses + 1];
+        int[] start = new int[variables + 2];
+        int[] literals = new int[k];
+        for (int clause = 1; clause <= clauses; clause++) {
+            int length = clause(clause, literals);
+            for (int j = 0; j < length; j++) {
+                last[clause] = Math.max(last[clause], rank(Math.abs(literals[j])));
+            }
+            start[last[clause] + 1]++;
+        }
+        for (int r = 1; r <= variables + 1; r++) {
+            start[r] += start[r-1];
+        }
+        int[] clauseOrder = new int[clauses + 1];
+        for (int clause = 1; clause <= clauses; clause++) {
+            clauseOrder[1 + start[last[clause]]++] = clause;
+        }
+
+        int[] varOrder = new int[variables + 1];
+        int[] order = new int[variables + clauses + 1];
+        int pos = 1;
+        int c = 1;
+        for (int r = 1; r <= variables; r++) {
+            varOrder[r] = label(r);
+            order[pos++] = -varOrder[r];
+            while (c <= clauses && last[clauseOrder[c]] == r) {
+                order[pos++] = clauseOrder[c++];
+            }
+        }
+        writer.writeOrder(order);
+        writer.writeVarOrder(varOrder);
+        writer.writeClauseOrder(clauseOrder);
+    }
+
+    private int rank(int var) {
+        return varRank == null ? var : varRank[var];
+    }
+
+    private int label(int rank) {
+        return varLabel == null ? rank : varLabel[rank];
+    }
+
+    /**
+     * Computes the literals of the given clause into literals[], negative for
+     * negated variables
+     * @return number of literals
+     */
+    int clause(int clause, int[] literals) {
+        switch (family) {
+        case GRID:
+        case LATTICE:
+            return edgeClause(clause - 1, literals);
+        case PLANTED:
+            return windowClause(clauseIndex[clause] - 1, literals);
+        default:
+            seedClause(clause);
+            distinct(0, variables, literals);
+            return k;
+        }
+    }
+
+    /**
+     * The clause of the given edge: horizontal edges row by row, then
+     * vertical edges, with the wrapping edges last in their row for LATTICE
+     */
+    private int edgeClause(int edge, int[] literals) {
+        boolean wrap = family == FAMILY.LATTICE;
+        int perRow = wrap ? cols : cols - 1;
+        int horizontal = rows * perRow;
+        int a, b;
+        if (edge < horizontal) {
+            int r = edge / perRow;
+            int c = edge % perRow;
+            a = r * cols + c;
+            b = r * cols + (c + 1) % cols;
+        } else {
+            int r = (edge - horizontal) / cols;
+            int c = (edge - horizontal) % cols;
+            a = r * cols + c;
+            b = ((r + 1) % rows) * cols + c;
+        }
+        seedClause(edge + 1);
+        literals[0] = sign(a + 1);
+        literals[1] = sign(b + 1);
+        return 2;
+    }
+
+    /**
+     * The clause with the given index in window order: k distinct variables
+     * from the window starting at index * (variables - width) / (clauses - 1)
+     */
+    private int windowClause(int index, int[] literals) {
+        long from = clauses > 1 ? (long) index * (variables - width) / (clauses - 1) : 0;
+        seedClause(index + 1);
+        distinct((int) from, width, literals);
+        for (int j = 0; j < k; j++) {
+            int var = varLabel[Math.abs(literals[j])];
+            literals[j] = literals[j] > 0 ? var : -var;
+        }
+        return k;
+    }
+
+    /**
+     * Puts k distinct variables from from+1 .. from+range, with random signs,
+     * into literals[]
+     */
+    private void distinct(int from, int range, int[] literals) {
+        for (int j = 0; j < k; j++) {
+            int var;
+            boolean repeated;
+            do {
+                var = from + 1 + next(range);
+                repeated = false;
+                for (int i = 0; i < j; i++) {
+                    if (Math.abs(literals[i]) == var) repeated = true;
+                }
+            } while (repeated);
+            literals[j] = sign(var);
+        }
+    }
+
+    private int sign(int var) {
+        return next(2) == 0 ? var : -var;
+    }
+
+    /**
+     * Starts the random sequence of the clause with the given number. The
+     * start is a hash of the number and the seed, so the sequences of
+     * neighbouring clauses do not overlap as they would if the starts were a
+     * fixed step apart.
+     */
+    private void seedClause(long number) {
+        state = mix64(seed ^ mix64(number));
+    }
+
+    /**
+     * Next number in [0, bound) from the SplitMix64 sequence of the clause
+     */
+    private int next(int bound) {
+        return (int) ((mix64(state += GOLDEN) >>> 1) % bound);
+    }
+
+    /**
+     * The SplitMix64 finalizer, scrambling all bits of z
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
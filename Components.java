@@ -0,0 +1,172 @@
+import java.util.Arrays;
+
+
+/**
+ * The connected components of the incidence graph of a formula, each of
+ * which can be made into a formula of its own and ordered apart from the
+ * others. Components are numbered in the order of their first clause, and
+ * keep the order of the clauses, and of the first occurrences of the
+ * variables, of the input.
+ *
+ * No clause of one component has a variable of another, so in an order made
+ * of the orders of the components one after another, every clause has the
+ * same kLeft and kRight as in the order of its component, and the width is
+ * the largest over the components.
+ */
+public class Components {
+    final OrderedCNF cnf;
+    /** Number of components */
+    final int count;
+    /** Component of each clause, -1 for clauses without variables */
+    final int[] clauseComponent;
+    /** Component of each variable, -1 for variables in no clause */
+    final int[] varComponent;
+
+    // The clauses (variables) of component i are clauses[clauseStart[i]..clauseStart[i+1]-1]
+    private final int[] clauseStart, clauses;
+    private final int[] varStart, vars;
+    private final int[] local;     // number of each clause and variable in its component
+    private final int[] inputRank; // rank of each variable among those of its component in the input
+
+    /**
+     * Finds the components of the given formula, by a breadth-first search
+     * from each clause not yet reached
+     */
+    public Components(OrderedCNF cnf) {
+        this.cnf = cnf;
+        IncidenceGraph graph = cnf.graph();
+        int n = cnf.clauses;
+        int m = cnf.variables;
+        clauseComponent = new int[n + 1];
+        varComponent = new int[m + 1];
+        Arrays.fill(clauseComponent, -1);
+        Arrays.fill(varComponent, -1);
+
+        int components = 0;
+        int[] queue = new int[n];
+        for (int first = 1; first <= n; first++) {
+            if (clauseComponent[first] >= 0 || graph.clauseDegree(first) == 0) continue;
+            int id = components++;
+            int head = 0, tail = 0;
+            clauseComponent[first] = id;
+            queue[tail++] = first;
+            while (head < tail) {
+                int c = queue[head++];
+                for (int j = graph.claOffsets[c]; j < graph.claOffsets[c+1]; j++) {
+                    int var = graph.claVars[j];
+                    if (varComponent[var] >= 0) continue;
+                    varComponent[var] = id;
+                    for (int k = graph.varOffsets[var]; k < graph.varOffsets[var+1]; k++) {
+                        int d = graph.varClauses[k];
+                        if (clauseComponent[d] < 0) {
+                            clauseComponent[d] = id;
+                            queue[tail++] = d;
+                        }
+                    }
+                }
+            }
+        }
+        count = components;
+
+        // Clauses and variables of each component, in increasing number
+        local = new int[n + m + 1];
+        clauseStart = new int[count + 1];
+        varStart = new int[count + 1];
+        for (int c = 1; c <= n; c++) {
+            if (clauseComponent[c] >= 0) local[c] = ++clauseStart[clauseComponent[c] + 1];
+        }
+        for (int var = 1; var <= m; var++) {
+            if (varComponent[var] >= 0) local[n + var] = ++varStart[varComponent[var] + 1];
+        }
+        for (int i = 0; i < count; i++) {
+            clauseStart[i+1] += clauseStart[i];
+            varStart[i+1] += varStart[i];
+        }
+        clauses = new int[clauseStart[count]];
+        vars = new int[varStart[count]];
+        for (int c = 1; c <= n; c++) {
+            int i = clauseComponent[c];
+            if (i >= 0) clauses[clauseStart[i] + local[c] - 1] = c;
+        }
+        for (int var = 1; var <= m; var++) {
+            int i = varComponent[var];
+            if (i >= 0) vars[varStart[i] + local[n + var] - 1] = var;
+        }
+
+        // Order of first occurrence of the variables within each component
+        inputRank = new int[m + 1];
+        int[] byInput = new int[cnf.inputVars + 1];
+        for (int var = 1; var <= m; var++) {
+            byInput[cnf.inputVarOrder[var]] = var;
+        }
+        int[] ranks = new int[count];
+        for (int r = 1; r <= cnf.inputVars; r++) {
+            int var = byInput[r];
+            if (varComponent[var] >= 0) inputRank[var] = ++ranks[varComponent[var]];
+        }
+    }
+
+    /**
+     * Returns the number of clauses in component i
+     */
+    public int clauses(int i) {
+        return clauseStart[i+1] - clauseStart[i];
+    }
+
+    /**
+     * Returns the number of variables in component i
+     */
+    public int variables(int i) {
+        return varStart[i+1] - varStart[i];
+    }
+
+    /**
+     * Returns component i as a formula of its own, with its clauses and
+     * variables numbered from 1 in the order of the whole formula. Parts can
+     * be made on several threads at once.
+     */
+    public OrderedCNF part(int i) {
+        IncidenceGraph graph = cnf.graph();
+        int n = cnf.clauses;
+        OrderedCNF part = new OrderedCNF(variables(i), clauses(i));
+        for (int j = clauseStart[i]; j < clauseStart[i+1]; j++) {
+            int c = clauses[j];
+            for (int k = graph.claOffsets[c]; k < graph.claOffsets[c+1]; k++) {
+                int var = graph.claVars[k];
+                part.put(local[c], local[n + var], graph.claSigns[k]);
+            }
+        }
+        for (int j = varStart[i]; j < varStart[i+1]; j++) {
+            part.inputVarOrder[local[n + vars[j]]] = inputRank[vars[j]];
+        }
+        part.inputVars = variables(i);
+        part.graph();
+        return part;
+    }
+
+    /**
+     * Returns the order of the whole formula made of the given orders of the
+     * components, one after another in the order of the components, followed
+     * by the variables in no clause and the clauses without variables
+     */
+    public int[] concatenate(int[][] orders) {
+        int n = cnf.clauses;
+        int m = cnf.variables;
+        int[] order = new int[n + m + 1];
+        int pos = 1;
+        for (int i = 0; i < count; i++) {
+            int[] part = orders[i];
+            for (int j = 1; j < part.length; j++) {
+                int e = part[j];
+                order[pos++] = (e > 0) ? clauses[clauseStart[i] + e - 1] : -vars[varStart[i] - e - 1];
+            }
+        }
+        for (int var = 1; var <= m; var++) {
+            if (varComponent[var] < 0) order[pos++] = -var;
+        }
+        for (int c = 1; c <= n; c++) {
+            if (clauseComponent[c] < 0) order[pos++] = c;
+        }
+        return order;
+    }
+}
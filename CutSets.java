@@ -0,0 +1,76 @@
+import java.util.BitSet;
+
+
+/**
+ * The sets of clauses on the 'left side' of every cut of an order. Cut i
+ * holds the clauses at positions 1..i of the order, so cut 0 is empty and
+ * the last cut holds all clauses.
+ *
+ * Nothing is stored per cut. Since the clauses of cut i are exactly the first
+ * <code>size(i)</code> clauses of the order, the position of every clause and
+ * the number of clauses up to every position answer all queries in O(1).
+ */
+public class CutSets {
+    private final int[] position;  // position of each clause in the order
+    private final int[] leftCount; // number of clauses at positions 1..i
+    private final int[] inOrder;   // the clauses, as they appear in the order
+
+    /**
+     * Builds the cut sets of the given order (as <code>OrderedCNF.order</code>,
+     * positions 1..order.length-1) of a formula with the given number of clauses
+     */
+    public CutSets(int[] order, int clauses) {
+        this.position = new int[clauses+1];
+        this.leftCount = new int[order.length];
+        this.inOrder = new int[clauses];
+
+        int count = 0;
+        for (int i = 1; i < order.length; i++) {
+            if (order[i] > 0) { // index i is a clause
+                position[order[i]] = i;
+                inOrder[count++] = order[i];
+            }
+            leftCount[i] = count;
+        }
+    }
+
+    /**
+     * Returns the number of cuts, i.e. the length of the order
+     */
+    public int cuts() {
+        return leftCount.length;
+    }
+
+    /**
+     * Whether the given clause is on the left side of the given cut
+     */
+    public boolean contains(int cut, int clause) {
+        return position[clause] > 0 && position[clause] <= cut;
+    }
+
+    /**
+     * Returns the number of clauses on the left side of the given cut
+     */
+    public int size(int cut) {
+        return leftCount[cut];
+    }
+
+    /**
+     * Returns the clause at the given index (starting at 0) among the clauses
+     * in the order. The clauses of cut i are those at index 0..size(i)-1.
+     */
+    public int clauseAt(int index) {
+        return inOrder[index];
+    }
+
+    /**
+     * Returns the clauses on the left side of the given cut as a new BitSet
+     */
+    public BitSet get(int cut) {
+        BitSet set = new BitSet(position.length);
+        for (int index = 0; index < leftCount[cut]; index++) {
+            set.set(inOrder[index]);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,238 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * Reader for CNF formulas in DIMACS format working directly on the bytes of
+ * the input. The input is streamed through one reused buffer and integers are
+ * parsed digit by digit, so reading a clause allocates nothing.
+ * Comment lines before the "p cnf" header that carry an order (on the form
+ * "c ORDER: ...", "c_var ORDER: ..." or "c_cla ORDER: ...") are kept.
+ */
+public class DimacsReader implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final byte[] ORDER_PREFIX =
+            OrderedCNF.ORDER_STRING.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ORDER_VAR_PREFIX =
+            OrderedCNF.ORDER_VAR_STRING.getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] ORDER_CLA_PREFIX =
+            OrderedCNF.ORDER_CLA_STRING.getBytes(StandardCharsets.US_ASCII);
+
+    private final ReadableByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    private int pos = 0;   // next unread byte in buffer
+    private int limit = 0; // number of valid bytes in buffer
+    private long consumed = 0; // bytes of input before those in buffer
+    private byte[] line = new byte[256]; // holds comment lines with an order
+
+    int variables; // number of variables, as given by the header
+    int clauses;   // number of clauses, as given by the header
+    String orderLine;    // the "c ORDER: " line, null if not present
+    String varOrderLine; // the "c_var ORDER: " line, null if not present
+    String claOrderLine; // the "c_cla ORDER: " line, null if not present
+
+    /**
+     * The literals of the last clause read by <code>nextClause()</code>.
+     * Only the first entries (as many as returned) are valid.
+     */
+    int[] clause = new int[16];
+
+    /**
+     * Opens the file at the given path for reading. Files ending in ".gz"
+     * are inflated while they are read, see <code>GzipChannel</code>.
+     */
+    public DimacsReader(String path) throws IOException {
+        this(GzipChannel.isGzip(path) ? new GzipChannel(path)
+                : FileChannel.open(Paths.get(path), StandardOpenOption.READ));
+    }
+
+    public DimacsReader(ReadableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Reads all lines up to and including the "p cnf" header, storing the
+     * number of variables and clauses and any order lines in the comments
+     */
+    public void readHeader() throws IOException {
+        int b = read();
+        while (b != 'p') {
+            if (b < 0) {
+                throw new IOException("No \"p cnf\" header found");
+            }
+            if (b == 'c') {
+                readComment();
+            } else if (b != '\n') {
+                skipLine();
+            }
+            b = read();
+        }
+        // "p cnf <variables> <clauses>"
+        b = skipSpaces(read());
+        while (b > ' ') b = read(); // the format, "cnf"
+        variables = nextInt(skipSpaces(b));
+        clauses = nextInt(skipSpaces(read()));
+        skipLine();
+    }
+
+    /**
+     * Reads the next clause into <code>clause</code>, returning the number of
+     * literals in it, or -1 if the end of input is reached before any literal.
+     * Comment lines between clauses are skipped.
+     */
+    public int nextClause() throws IOException {
+        int length = 0;
+        while (true) {
+            int b = skipWhitespace(read());
+            if (b == 'c' && length == 0) {
+                skipLine();
+                continue;
+            }
+            if (b < 0) return (length == 0 ? -1 : length);
+
+            int value = nextInt(b);
+            if (value == 0) return length;
+            if (length == clause.length) {
+                int[] grown = new int[2*clause.length];
+                System.arraycopy(clause, 0, grown, 0, length);
+                clause = grown;
+            }
+            clause[length++] = value;
+        }
+    }
+
+    /**
+     * Returns the number of bytes of input read so far, e.g. the offset of
+     * the first clause after <code>readHeader()</code>
+     */
+    public long offset() {
+        return consumed + pos;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Parses an integer starting with the byte b. The byte after the last
+     * digit is consumed
+     */
+    private int nextInt(int b) throws IOException {
+        boolean negative = (b == '-');
+        if (negative) b = read();
+        if (b < '0' || b > '9') {
+            throw new IOException("Expected a number, found " + describe(b));
+        }
+        int value = 0;
+        while (b >= '0' && b <= '9') {
+            value = 10*value + (b - '0');
+            b = read();
+        }
+        if (b > ' ') {
+            throw new IOException("Expected a number, found " + describe(b));
+        }
+        if (b == '\n') pos--; // keep end of line for skipLine()
+        return (negative ? -value : value);
+    }
+
+    /**
+     * Reads a comment line whose first byte 'c' has been consumed. Lines with
+     * one of the order prefixes are stored, all others are skipped
+     */
+    private void readComment() throws IOException {
+        line[0] = 'c';
+        int length = 1;
+        int b = read();
+        while (b >= 0 && b != '\n') {
+            if (length < ORDER_VAR_PREFIX.length
+                    && !matches(ORDER_PREFIX, length, b)
+                    && !matches(ORDER_VAR_PREFIX, length, b)
+                    && !matches(ORDER_CLA_PREFIX, length, b)) {
+                skipLine(); // an ordinary comment
+                return;
+            }
+            if (length == line.length) {
+                byte[] grown = new byte[2*line.length];
+                System.arraycopy(line, 0, grown, 0, length);
+                line = grown;
+            }
+            line[length++] = (byte) b;
+            b = read();
+        }
+        if (length > 0 && line[length-1] == '\r') length--;
+
+        if (startsWith(ORDER_PREFIX, length)) {
+            orderLine = new String(line, 0, length, StandardCharsets.US_ASCII);
+        } else if (startsWith(ORDER_VAR_PREFIX, length)) {
+            varOrderLine = new String(line, 0, length, StandardCharsets.US_ASCII);
+        } else if (startsWith(ORDER_CLA_PREFIX, length)) {
+            claOrderLine = new String(line, 0, length, StandardCharsets.US_ASCII);
+        }
+    }
+
+    /**
+     * Whether byte b, read at index i of a comment line, still agrees with
+     * the given prefix
+     */
+    private boolean matches(byte[] prefix, int i, int b) {
+        for (int j = 0; j < Math.min(i, prefix.length); j++) {
+            if (line[j] != prefix[j]) return false;
+        }
+        return (i >= prefix.length || prefix[i] == b);
+    }
+
+    /**
+     * Whether the stored comment line of the given length is longer than and
+     * starts with the given prefix
+     */
+    private boolean startsWith(byte[] prefix, int length) {
+        if (length <= prefix.length) return false;
+        for (int j = 0; j < prefix.length; j++) {
+            if (line[j] != prefix[j]) return false;
+        }
+        return true;
+    }
+
+    private void skipLine() throws IOException {
+        int b = read();
+        while (b >= 0 && b != '\n') b = read();
+    }
+
+    private int skipSpaces(int b) throws IOException {
+        while (b == ' ' || b == '\t') b = read();
+        return b;
+    }
+
+    private int skipWhitespace(int b) throws IOException {
+        while (b == ' ' || b == '\t' || b == '\r' || b == '\n') b = read();
+        return b;
+    }
+
+    private static String describe(int b) {
+        return (b < 0 ? "end of input" : "'" + (char) b + "'");
+    }
+
+    /**
+     * Returns the next byte of input, or -1 at the end of input
+     */
+    private int read() throws IOException {
+        if (pos == limit) {
+            wrapped.clear();
+            int n = 0;
+            while (n == 0) n = channel.read(wrapped);
+            if (n < 0) return -1;
+            consumed += limit;
+            pos = 0;
+            limit = n;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+}
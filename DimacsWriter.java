@@ -0,0 +1,240 @@
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+
+/**
+ * Writer for CNF formulas in DIMACS format. Everything is written as bytes
+ * into one reused buffer, which is handed to the channel whenever it is full,
+ * so writing a formula takes time proportional to its number of literals and
+ * allocates nothing per clause or literal.
+ */
+public class DimacsWriter implements Closeable, Flushable {
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_INT_LENGTH = 11; // "-2147483648"
+
+    private final WritableByteChannel channel;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+    private int pos = 0; // next free byte in buffer
+
+    /**
+     * Opens the file at the given path for writing, replacing its contents
+     */
+    public DimacsWriter(String path) throws IOException {
+        this(FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    public DimacsWriter(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Writes the order in the comments, on the form
+     * "c ORDER:  c42 c21 v42 v13 c12 ..." between two separator lines
+     */
+    public void writeOrder(int[] order) throws IOException {
+        writeLine("c ----------------");
+        writeString(OrderedCNF.ORDER_STRING);
+        for (int i = 1; i < order.length; i++) {
+            ensure(MAX_INT_LENGTH + 2);
+            if (order[i] > 0) {
+                put(' ');
+                put('c');
+                putInt(order[i]);
+            } else {
+                put(' ');
+                put('v');
+                putInt(-order[i]);
+            }
+        }
+        writeLine("");
+        writeLine("c ----------------");
+    }
+
+    /**
+     * Writes the variable order in the comments, on the form
+     * "c_var ORDER:  v42 v13 ..."
+     */
+    public void writeVarOrder(int[] varOrder) throws IOException {
+        writeOrderLine(OrderedCNF.ORDER_VAR_STRING, 'v', varOrder);
+    }
+
+    /**
+     * Writes the clause order in the comments, on the form
+     * "c_cla ORDER:  c42 c21 ..."
+     */
+    public void writeClauseOrder(int[] clauseOrder) throws IOException {
+        writeOrderLine(OrderedCNF.ORDER_CLA_STRING, 'c', clauseOrder);
+    }
+
+    private void writeOrderLine(String prefix, char kind, int[] order) throws IOException {
+        writeString(prefix);
+        for (int i = 1; i < order.length; i++) {
+            ensure(MAX_INT_LENGTH + 2);
+            put(' ');
+            put(kind);
+            putInt(order[i]);
+        }
+        writeLine("");
+    }
+
+    /**
+     * Writes the "p cnf" header
+     */
+    public void writeHeader(int variables, int clauses) throws IOException {
+        writeString("p cnf ");
+        writeInt(variables);
+        writeString(" ");
+        writeInt(clauses);
+        writeLine("");
+    }
+
+    /**
+     * Writes the clause with the given literals, literals[0..length-1]
+     */
+    public void writeClause(int[] literals, int length) throws IOException {
+        for (int j = 0; j < length; j++) {
+            ensure(MAX_INT_LENGTH + 1);
+            putInt(literals[j]);
+            put(' ');
+        }
+        writeLine("0");
+    }
+
+    /**
+     * Writes the header and all clauses of the formula with the given
+     * incidence graph. Each variable of a clause is written once, positive if
+     * it occurs positive in the clause.
+     */
+    public void writeFormula(IncidenceGraph graph) throws IOException {
+        writeHeader(graph.variables, graph.clauses);
+
+        for (int clause = 1; clause <= graph.clauses; clause++) {
+            int j = graph.claOffsets[clause];
+            while (j < graph.claOffsets[clause+1]) {
+                int var = graph.claVars[j];
+                boolean sign = false;
+                for (; j < graph.claOffsets[clause+1] && graph.claVars[j] == var; j++) {
+                    sign |= graph.claSigns[j];
+                }
+                ensure(MAX_INT_LENGTH + 1);
+                putInt(sign ? var : -var);
+                put(' ');
+            }
+            writeLine("0");
+        }
+    }
+
+    /**
+     * Writes the header and all clauses read from the given reader, whose
+     * header has been read, in the same form as <code>writeFormula(graph)</code>:
+     * variables in increasing order, each once, positive if it occurs
+     * positive in the clause. The clauses are streamed, one at a time.
+     */
+    public void writeFormula(DimacsReader reader) throws IOException {
+        writeHeader(reader.variables, reader.clauses);
+        for (int clause = 1; clause <= reader.clauses; clause++) {
+            int length = reader.nextClause();
+            if (length < 0) {
+                throw new IOException("Expected " + reader.clauses + " clauses, found " + (clause-1));
+            }
+            int[] literals = reader.clause;
+            // Sort on the variable, positive before negative
+            for (int j = 0; j < length; j++) {
+                literals[j] = 2 * Math.abs(literals[j]) + (literals[j] < 0 ? 1 : 0);
+            }
+            Arrays.sort(literals, 0, length);
+            for (int j = 0; j < length; j++) {
+                int var = literals[j] >>> 1;
+                if (j > 0 && literals[j-1] >>> 1 == var) continue;
+                ensure(MAX_INT_LENGTH + 1);
+                putInt((literals[j] & 1) == 0 ? var : -var);
+                put(' ');
+            }
+            writeLine("0");
+        }
+    }
+
+    /**
+     * Writes the given integer in decimal
+     */
+    public void writeInt(int value) throws IOException {
+        ensure(MAX_INT_LENGTH);
+        putInt(value);
+    }
+
+    /**
+     * Writes the given string, which must consist of ASCII characters only
+     */
+    public void writeString(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            ensure(1);
+            put(s.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the given string followed by a newline
+     */
+    public void writeLine(String s) throws IOException {
+        writeString(s);
+        ensure(1);
+        put('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        wrapped.clear();
+        wrapped.limit(pos);
+        while (wrapped.hasRemaining()) {
+            channel.write(wrapped);
+        }
+        pos = 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        channel.close();
+    }
+
+    /**
+     * Makes room for at least the given number of bytes in the buffer
+     */
+    private void ensure(int bytes) throws IOException {
+        if (pos + bytes > buffer.length) flush();
+    }
+
+    private void put(char c) {
+        buffer[pos++] = (byte) c;
+    }
+
+    /**
+     * Puts the digits of value into the buffer, which must have room for them
+     */
+    private void putInt(int value) {
+        if (value < 0) {
+            put('-');
+            value = -value;
+        }
+        int end = pos;
+        int rest = value;
+        do {
+            end++;
+            rest /= 10;
+        } while (rest > 0);
+        pos = end;
+        do {
+            buffer[--end] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+    }
+}
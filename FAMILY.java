@@ -0,0 +1,3 @@
+public enum FAMILY {
+	RANDOM, GRID, LATTICE, PLANTED;
+}
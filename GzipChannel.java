@@ -0,0 +1,152 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+
+/**
+ * A channel reading the decompressed bytes of a gzip file, for reading
+ * compressed instances with a DimacsReader. The file is inflated on a thread
+ * of its own into a fixed set of blocks: filled blocks are handed to the
+ * reader through a bounded queue, and come back through another once read,
+ * so inflating and parsing overlap without allocating per block and without
+ * inflating further ahead than the blocks allow.
+ */
+public class GzipChannel implements ReadableByteChannel {
+    private static final int BLOCK_SIZE = 1 << 16;
+    private static final int BLOCKS = 8;
+    private static final ByteBuffer END = ByteBuffer.allocate(0); // no more blocks
+
+    private final InputStream in;
+    private final BlockingQueue<ByteBuffer> filled = new ArrayBlockingQueue<>(BLOCKS + 1);
+    private final BlockingQueue<ByteBuffer> free = new ArrayBlockingQueue<>(BLOCKS);
+    private final Thread inflater;
+    private volatile IOException error; // why inflating stopped early, if it did
+    private ByteBuffer current;         // the block being read, null for none
+    private boolean open = true;
+
+    /**
+     * Whether the file at the given path is read through a GzipChannel
+     */
+    static boolean isGzip(String path) {
+        return path.endsWith(".gz");
+    }
+
+    /**
+     * Returns the size of the file at the given path once inflated, as the
+     * gzip trailer gives it (modulo 4 GB, so never less than the file size),
+     * or the size of the file itself if it is not compressed
+     */
+    static long inputSize(File file) throws IOException {
+        long length = file.length();
+        if (!isGzip(file.getPath()) || length < 4) return length;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(length - 4);
+            long size = 0;
+            for (int i = 0; i < 4; i++) {
+                size |= (long) raf.read() << (8 * i); // little-endian
+            }
+            return Math.max(size, length);
+        }
+    }
+
+    /**
+     * Opens the gzip file at the given path and starts inflating it
+     */
+    public GzipChannel(String path) throws IOException {
+        FileInputStream file = new FileInputStream(path);
+        try {
+            this.in = new GZIPInputStream(file, BLOCK_SIZE);
+        } catch (IOException e) {
+            file.close();
+            throw new IOException(path + ": " + e.getMessage(), e);
+        }
+        for (int i = 0; i < BLOCKS; i++) {
+            free.add(ByteBuffer.allocate(BLOCK_SIZE));
+        }
+        inflater = new Thread(this::inflate, "gunzip " + path);
+        inflater.setDaemon(true);
+        inflater.start();
+    }
+
+    /**
+     * Fills free blocks with inflated bytes until the end of the file
+     */
+    private void inflate() {
+        try {
+            while (true) {
+                ByteBuffer block = free.take();
+                block.clear();
+                byte[] bytes = block.array();
+                int n = 0;
+                int read = 0;
+                while (n < bytes.length && (read = in.read(bytes, n, bytes.length - n)) >= 0) {
+                    n += read;
+                }
+                if (n > 0) {
+                    block.limit(n);
+                    filled.put(block);
+                }
+                if (read < 0) break;
+            }
+        } catch (IOException e) {
+            error = e;
+        } catch (InterruptedException e) {
+            return; // closed
+        }
+        filled.add(END); // there is always room for END
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        if (!open) throw new ClosedChannelException();
+        if (current == END) return -1;
+        if (current == null || !current.hasRemaining()) {
+            if (current != null) free.add(current);
+            try {
+                current = filled.take();
+            } catch (InterruptedException e) {
+                current = null;
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while inflating");
+            }
+            if (current == END) {
+                if (error != null) throw error;
+                return -1;
+            }
+        }
+        int n = Math.min(dst.remaining(), current.remaining());
+        dst.put(current.array(), current.position(), n);
+        current.position(current.position() + n);
+        return n;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Stops inflating and closes the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) return;
+        open = false;
+        inflater.interrupt();
+        try {
+            inflater.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        in.close();
+    }
+}
@@ -0,0 +1,200 @@
+import java.util.Arrays;
+
+
+/**
+ * The incidence graph between clauses and variables of a CNF formula, stored
+ * in compressed sparse row form in both directions. The variables of clause c
+ * are <code>claVars[claOffsets[c]] .. claVars[claOffsets[c+1]-1]</code>, sorted
+ * in increasing order, and the clauses of variable v are
+ * <code>varClauses[varOffsets[v]] .. varClauses[varOffsets[v+1]-1]</code>,
+ * sorted in increasing order. The sign of each occurrence is stored alongside
+ * (true for a positive literal).
+ *
+ * Literals are first collected with <code>add</code> and the compressed form
+ * is built by <code>build()</code>, using counting sorts.
+ */
+public class IncidenceGraph {
+    final int variables; // number of variables
+    final int clauses;   // number of clauses
+
+    int[] claOffsets;     // start of the variables of each clause, size clauses+2
+    int[] claVars;        // variables of all clauses
+    boolean[] claSigns;   // signs of the literals in claVars
+    int[] varOffsets;     // start of the clauses of each variable, size variables+2
+    int[] varClauses;     // clauses of all variables
+    boolean[] varSigns;   // signs of the literals in varClauses
+
+    // Literals added since the last build, in the order they were added
+    private int size = 0;
+    private int[] addedClauses = new int[16];
+    private int[] addedVars = new int[16];
+    private boolean[] addedSigns = new boolean[16];
+
+    public IncidenceGraph(int variables, int clauses) {
+        this.variables = variables;
+        this.clauses = clauses;
+        build();
+    }
+
+    /**
+     * Adds the literal (variable 'var', positive or negative depending on
+     * 'sign') to the given clause. Takes effect at the next <code>build()</code>
+     */
+    public void add(int clause, int var, boolean sign) {
+        if (size == addedClauses.length) {
+            addedClauses = Arrays.copyOf(addedClauses, 2*size);
+            addedVars = Arrays.copyOf(addedVars, 2*size);
+            addedSigns = Arrays.copyOf(addedSigns, 2*size);
+        }
+        addedClauses[size] = clause;
+        addedVars[size] = var;
+        addedSigns[size] = sign;
+        size++;
+    }
+
+    /**
+     * Makes room for the given number of literals after those added so far.
+     * They are filled in with <code>set</code>, each index once, and take
+     * effect at the next <code>build()</code>
+     * @return index of the first literal reserved
+     */
+    int reserve(int literals) {
+        int first = size;
+        int needed = size + literals;
+        if (needed > addedClauses.length) {
+            addedClauses = Arrays.copyOf(addedClauses, needed);
+            addedVars = Arrays.copyOf(addedVars, needed);
+            addedSigns = Arrays.copyOf(addedSigns, needed);
+        }
+        size = needed;
+        return first;
+    }
+
+    /**
+     * Sets the reserved literal at the given index. Different indices can be
+     * set from different threads.
+     */
+    void set(int index, int clause, int var, boolean sign) {
+        addedClauses[index] = clause;
+        addedVars[index] = var;
+        addedSigns[index] = sign;
+    }
+
+    /**
+     * Builds the compressed form from all literals added so far
+     */
+    public void build() {
+        if (claOffsets != null && literals() > 0) {
+            // Keep the literals of the previous build
+            int old = literals();
+            int[] oldClauses = new int[old];
+            for (int c = 1; c <= clauses; c++) {
+                for (int j = claOffsets[c]; j < claOffsets[c+1]; j++) {
+                    oldClauses[j] = c;
+                }
+            }
+            int[] tail = Arrays.copyOf(addedClauses, size);
+            addedClauses = Arrays.copyOf(oldClauses, old + size);
+            System.arraycopy(tail, 0, addedClauses, old, size);
+            tail = Arrays.copyOf(addedVars, size);
+            addedVars = Arrays.copyOf(claVars, old + size);
+            System.arraycopy(tail, 0, addedVars, old, size);
+            boolean[] signTail = Arrays.copyOf(addedSigns, size);
+            addedSigns = Arrays.copyOf(claSigns, old + size);
+            System.arraycopy(signTail, 0, addedSigns, old, size);
+            size += old;
+        }
+        int literals = size;
+
+        // Variable side, counting sort on the variables
+        varOffsets = new int[variables+2];
+        for (int i = 0; i < literals; i++) {
+            varOffsets[addedVars[i]+1]++;
+        }
+        for (int v = 1; v <= variables+1; v++) {
+            varOffsets[v] += varOffsets[v-1];
+        }
+        int[] byVarClauses = new int[literals];
+        boolean[] byVarSigns = new boolean[literals];
+        int[] next = Arrays.copyOf(varOffsets, variables+1);
+        for (int i = 0; i < literals; i++) {
+            int j = next[addedVars[i]]++;
+            byVarClauses[j] = addedClauses[i];
+            byVarSigns[j] = addedSigns[i];
+        }
+
+        // Clause side, counting sort on the clauses. Scanning the variables in
+        // increasing order leaves the variables of each clause sorted.
+        claOffsets = new int[clauses+2];
+        for (int i = 0; i < literals; i++) {
+            claOffsets[addedClauses[i]+1]++;
+        }
+        for (int c = 1; c <= clauses+1; c++) {
+            claOffsets[c] += claOffsets[c-1];
+        }
+        claVars = new int[literals];
+        claSigns = new boolean[literals];
+        next = Arrays.copyOf(claOffsets, clauses+1);
+        for (int v = 0; v <= variables; v++) {
+            for (int j = varOffsets[v]; j < varOffsets[v+1]; j++) {
+                int k = next[byVarClauses[j]]++;
+                claVars[k] = v;
+                claSigns[k] = byVarSigns[j];
+            }
+        }
+
+        // Again from the clause side, so the clauses of each variable are sorted
+        varClauses = byVarClauses;
+        varSigns = byVarSigns;
+        next = Arrays.copyOf(varOffsets, variables+1);
+        for (int c = 0; c <= clauses; c++) {
+            for (int j = claOffsets[c]; j < claOffsets[c+1]; j++) {
+                int k = next[claVars[j]]++;
+                varClauses[k] = c;
+                varSigns[k] = claSigns[j];
+            }
+        }
+
+        size = 0;
+        addedClauses = new int[16];
+        addedVars = new int[16];
+        addedSigns = new boolean[16];
+    }
+
+    /**
+     * Whether the compressed form holds all literals added, i.e. no literal
+     * was added since the last <code>build()</code>
+     */
+    public boolean isBuilt() {
+        return size == 0;
+    }
+
+    /**
+     * Whether the given clause contains the given variable, positive or
+     * negative. Binary search among the variables of the clause
+     */
+    public boolean contains(int clause, int var) {
+        return Arrays.binarySearch(claVars, claOffsets[clause], claOffsets[clause+1], var) >= 0;
+    }
+
+    /**
+     * Returns the total number of literal occurrences
+     */
+    public int literals() {
+        return claOffsets[clauses+1];
+    }
+
+    /**
+     * Returns the number of literals in the given clause
+     */
+    public int clauseDegree(int clause) {
+        return claOffsets[clause+1] - claOffsets[clause];
+    }
+
+    /**
+     * Returns the number of occurrences of the given variable
+     */
+    public int varDegree(int var) {
+        return varOffsets[var+1] - varOffsets[var];
+    }
+}
@@ -0,0 +1,285 @@
+/**
+ * Keeps kLeft and kRight of every clause (as defined by
+ * <code>OrderedCNF.countK</code>), their maximum and their sum up to date
+ * while elements of the order of an OrderedCNF move.
+ *
+ * Every move is a series of swaps of neighbouring elements. Swapping the
+ * elements at positions i and i+1 only changes k for clauses at those two
+ * positions: every other clause keeps its variables on the same side, and
+ * the variables counted for it only change where they start or end between
+ * i and i+1. The exception is swapping two variables, which changes kLeft of
+ * clauses having one of them as their leftmost variable. A swap therefore
+ * costs time proportional to the degrees of the two elements swapped (and of
+ * the clauses of two swapped variables), and moving an element d positions
+ * costs d swaps. Moving a clause never swaps two variables.
+ *
+ * The order, the positions in the total ordering and <code>kClause</code>
+ * of the OrderedCNF are updated in place.
+ */
+public class KEvaluator {
+    private final IncidenceGraph graph;
+    private final int[] order;
+    private final int[] claPos;      // position of each clause in order
+    private final int[] varPos;      // position of each variable in order
+    private final int[][] kClause;
+
+    private final int[] varsBefore;  // number of variables at positions < i
+    private final int[] active;      // variables after i with a clause before i
+    private final int[] firstClause; // position of the first clause of each variable
+    private final int[] kCount;      // number of clauses with each k, shifted by offset
+    private final int offset;        // lowest possible k is -offset
+    private int maxK;
+    private int sumK;
+
+    // Variables affected by the current swap, marked with stamps for the two
+    // elements they are adjacent to
+    private final int[] touched;
+    private final int[] adjLeft;
+    private final int[] adjRight;
+    private final int[] updated; // clauses updated in the current swap
+    private int stamp = 0;
+
+    /**
+     * Sets up the evaluator for the current order of the given formula, with
+     * the given incidence graph. The positions in the total ordering and
+     * <code>kClause</code> are recomputed from <code>cnf.order</code>.
+     */
+    public KEvaluator(OrderedCNF cnf, IncidenceGraph graph) {
+        this.graph = graph;
+        this.order = cnf.order;
+        this.claPos = cnf.clausePositionInTotalOrdering;
+        this.varPos = cnf.varPositionInTotalOrdering;
+        this.kClause = cnf.kClause;
+
+        int variables = graph.variables;
+        int clauses = graph.clauses;
+        this.varsBefore = new int[order.length + 1];
+        this.active = new int[order.length + 1];
+        this.firstClause = new int[variables + 1];
+        this.adjLeft = new int[variables + 1];
+        this.adjRight = new int[variables + 1];
+        this.updated = new int[clauses + 1];
+
+        int maxDegree = 0;
+        for (int c = 1; c <= clauses; c++) {
+            maxDegree = Math.max(maxDegree, graph.clauseDegree(c));
+        }
+        this.offset = maxDegree;
+        this.kCount = new int[2*variables + maxDegree + 2];
+        this.touched = new int[2*maxDegree + 2];
+
+        for (int i = 1; i < order.length; i++) {
+            varsBefore[i+1] = varsBefore[i];
+            if (order[i] < 0) {
+                varsBefore[i+1]++;
+                varPos[-order[i]] = i;
+            } else {
+                claPos[order[i]] = i;
+            }
+        }
+        for (int var = 1; var <= variables; var++) {
+            firstClause[var] = Integer.MAX_VALUE;
+            for (int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++) {
+                firstClause[var] = Math.min(firstClause[var], claPos[graph.varClauses[j]]);
+            }
+            if (firstClause[var] < varPos[var] - 1) {
+                active[firstClause[var] + 1]++;
+                active[varPos[var]]--;
+            }
+        }
+        for (int i = 1; i < order.length; i++) {
+            active[i] += active[i-1];
+        }
+
+        maxK = -offset;
+        for (int i = 1; i < order.length; i++) {
+            if (order[i] > 0) {
+                int clause = order[i];
+                computeK(clause, i);
+                int k = kClause[clause][0] + kClause[clause][1];
+                kCount[k + offset]++;
+                sumK += k;
+                if (k > maxK) maxK = k;
+            }
+        }
+        if (clauses == 0) maxK = 0;
+    }
+
+    /**
+     * Returns the largest k of any clause in the current order
+     */
+    public int maxK() {
+        return maxK;
+    }
+
+    /**
+     * Returns the sum of k over all clauses in the current order
+     */
+    public int sumK() {
+        return sumK;
+    }
+
+    /**
+     * Moves the element at position 'from' to position 'to', shifting the
+     * elements in between one step towards 'from'. Moving it back from 'to'
+     * to 'from' restores the previous state exactly.
+     */
+    public void move(int from, int to) {
+        while (from > to) {
+            swap(from - 1);
+            from--;
+        }
+        while (from < to) {
+            swap(from);
+            from++;
+        }
+    }
+
+    /**
+     * Swaps the elements at positions i and i+1
+     */
+    public void swap(int i) {
+        int left = order[i];
+        int right = order[i+1];
+
+        // Variables whose interval may start or end between i and i+1
+        stamp++;
+        int n = 0;
+        n = collect(left, adjLeft, n);
+        n = collect(right, adjRight, n);
+        for (int t = 0; t < n; t++) {
+            count(touched[t], i, -1);
+        }
+
+        order[i] = right;
+        order[i+1] = left;
+        setPosition(right, i);
+        setPosition(left, i+1);
+        varsBefore[i+1] = varsBefore[i] + (right < 0 ? 1 : 0);
+
+        for (int t = 0; t < n; t++) {
+            int var = touched[t];
+            // Other clauses of var are after i+1 if the first was at i or i+1
+            if (firstClause[var] == i || firstClause[var] == i+1) {
+                int first = Integer.MAX_VALUE;
+                if (right > 0 && adjRight[var] == stamp) first = i;
+                else if (left > 0 && adjLeft[var] == stamp) first = i+1;
+                firstClause[var] = first;
+            }
+            count(var, i, 1);
+        }
+
+        if (right > 0) update(right, i);
+        if (left > 0) update(left, i+1);
+        if (right < 0 && left < 0) {
+            // The leftmost variable of clauses of either may have changed
+            updateClausesOf(-right);
+            updateClausesOf(-left);
+        }
+    }
+
+    private void updateClausesOf(int var) {
+        for (int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++) {
+            int clause = graph.varClauses[j];
+            if (updated[clause] != stamp) {
+                updated[clause] = stamp;
+                update(clause, claPos[clause]);
+            }
+        }
+    }
+
+    /**
+     * Adds the variables of the given element (the variable itself, or those
+     * in the clause) to <code>touched</code>, marking them in adj
+     */
+    private int collect(int element, int[] adj, int n) {
+        if (element < 0) {
+            n = touch(-element, n);
+            adj[-element] = stamp;
+        } else {
+            for (int j = graph.claOffsets[element]; j < graph.claOffsets[element+1]; j++) {
+                n = touch(graph.claVars[j], n);
+                adj[graph.claVars[j]] = stamp;
+            }
+        }
+        return n;
+    }
+
+    private int touch(int var, int n) {
+        if (adjLeft[var] != stamp && adjRight[var] != stamp) {
+            touched[n++] = var;
+        }
+        return n;
+    }
+
+    /**
+     * Adds sign to <code>active</code> at positions i and i+1 where the given
+     * variable is counted
+     */
+    private void count(int var, int i, int sign) {
+        for (int q = i; q <= i+1; q++) {
+            if (firstClause[var] < q && q < varPos[var]) {
+                active[q] += sign;
+            }
+        }
+    }
+
+    private void setPosition(int element, int pos) {
+        if (element < 0) {
+            varPos[-element] = pos;
+        } else {
+            claPos[element] = pos;
+        }
+    }
+
+    /**
+     * Recomputes k of the given clause at position i and updates the count,
+     * maximum and sum of k
+     */
+    private void update(int clause, int i) {
+        int old = kClause[clause][0] + kClause[clause][1];
+        computeK(clause, i);
+        int k = kClause[clause][0] + kClause[clause][1];
+        if (k == old) return;
+
+        kCount[old + offset]--;
+        kCount[k + offset]++;
+        sumK += k - old;
+        if (k > maxK) {
+            maxK = k;
+        }
+        while (kCount[maxK + offset] == 0 && maxK > -offset) {
+            maxK--;
+        }
+    }
+
+    /**
+     * Computes kLeft and kRight of the given clause at position i into
+     * <code>kClause</code>, in time proportional to the size of the clause
+     */
+    private void computeK(int clause, int i) {
+        int lowVarCount = 0;
+        int lowestPos = -1;
+        int kRight = active[i];
+        for (int j = graph.claOffsets[clause]; j < graph.claOffsets[clause+1]; j++) {
+            int var = graph.claVars[j];
+            if (varPos[var] < i) {
+                lowVarCount++;
+                if (lowestPos == -1 || varPos[var] < lowestPos) {
+                    lowestPos = varPos[var];
+                }
+            }
+            // Own variables to the right do not count, each only once
+            boolean repeated = (j > graph.claOffsets[clause] && graph.claVars[j-1] == var);
+            if (!repeated && varPos[var] > i && firstClause[var] < i) {
+                kRight--;
+            }
+        }
+        int kLeft = 0;
+        if (lowVarCount > 0) {
+            kLeft = varsBefore[i] - varsBefore[lowestPos] - lowVarCount;
+        }
+        kClause[clause][0] = kLeft;
+        kClause[clause][1] = kRight;
+    }
+}
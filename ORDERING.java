@@ -1,4 +1,3 @@
-
 public enum ORDERING {
-	NONE, SINGLE, DOUBLE, DOUBLEK,K;
+	NONE, SINGLE, DOUBLE, DOUBLEK,K, PORTFOLIO;
 }
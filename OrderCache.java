@@ -0,0 +1,236 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+
+/**
+ * A directory of orders found before, so the same formula is not ordered
+ * again with the same settings. An entry is keyed by a SHA-256 hash of the
+ * formula, the ordering mode and the settings it depends on (see
+ * <code>OrderedCNF.settings</code>), and holds the order and kClause in
+ * an <code>OrderFile</code>.
+ *
+ * The formula is hashed while it is streamed by a DimacsReader, without
+ * building the incidence graph. Each clause is hashed with its literals
+ * sorted and repeated literals removed, so the layout of the file and its
+ * comments do not change the key. The order of the clauses does, as the
+ * order refers to clauses by number. The order lines are part of the key for
+ * the modes that use them. The other modes start from the order in which the
+ * variables first occur, which depends on the order of the literals within
+ * the clauses, so that order is part of their key.
+ *
+ * Entries are written to a temporary file and renamed into place, so
+ * readers never see a partial entry. A hit marks the entry as used by
+ * setting its modification time; once the entries take more than the size
+ * limit, the least recently used are deleted.
+ */
+public class OrderCache {
+    private static final int VERSION = 3; // part of the key, change when orders change
+    private static final String SUFFIX = ".order";
+
+    private final File dir;
+    private final long maxBytes;
+
+    /**
+     * A cache in the given directory, created if needed, holding at most
+     * about maxBytes of entries
+     */
+    public OrderCache(File dir, long maxBytes) throws IOException {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        Files.createDirectories(dir.toPath());
+    }
+
+    /**
+     * Returns the order of the formula in the file at the given path with
+     * the given mode, from the cache if it is there, and otherwise by
+     * parsing and ordering the formula and adding the result to the cache.
+     * Nothing is printed.
+     */
+    public OrderingResult order(String path, ORDERING ordering, int rounds) throws IOException {
+        String key = key(path, ordering, rounds);
+        OrderingResult result = get(key, ordering);
+        if (result == null) {
+            OrderedCNF cnf = OrderedCNF.parse(path);
+            cnf.quiet = true;
+            result = cnf.order(ordering, rounds);
+            put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the key of the formula in the file at the given path, ordered
+     * with the given mode
+     */
+    public String key(String path, ORDERING ordering, int rounds) throws IOException {
+        MessageDigest digest = sha256();
+        digest.update((VERSION + " " + OrderedCNF.settings(ordering, rounds))
+                .getBytes(StandardCharsets.UTF_8));
+
+        DimacsReader reader = new DimacsReader(path);
+        try {
+            reader.readHeader();
+            BitSet seen = null;        // variables met so far, if first occurrences are hashed
+            MessageDigest firsts = null; // hash of the variables in order of first occurrence
+            if (ordering == ORDERING.SINGLE) {
+                update(digest, reader.orderLine);
+            } else if (ordering == ORDERING.DOUBLE || ordering == ORDERING.DOUBLEK) {
+                update(digest, reader.varOrderLine);
+                update(digest, reader.claOrderLine);
+            } else {
+                seen = new BitSet(reader.variables + 1);
+                firsts = sha256();
+            }
+            ByteBuffer firstVars = ByteBuffer.allocate(4 * 1024); // newly met variables, in file order
+
+            ByteBuffer bytes = ByteBuffer.allocate(4 * 16);
+            bytes.putInt(reader.variables).putInt(reader.clauses);
+            for (int clause = 1; clause <= reader.clauses; clause++) {
+                int length = reader.nextClause();
+                if (length < 0) {
+                    throw new IOException("Expected " + reader.clauses + " clauses, found " + (clause-1));
+                }
+                int[] literals = reader.clause;
+                if (seen != null) {
+                    for (int j = 0; j < length; j++) {
+                        int var = Math.abs(literals[j]);
+                        if (seen.get(var)) continue;
+                        seen.set(var);
+                        if (!firstVars.hasRemaining()) {
+                            firsts.update(firstVars.array(), 0, firstVars.position());
+                            firstVars.clear();
+                        }
+                        firstVars.putInt(var);
+                    }
+                }
+                Arrays.sort(literals, 0, length);
+                int distinct = 0;
+                for (int j = 0; j < length; j++) {
+                    if (j == 0 || literals[j] != literals[j-1]) distinct++;
+                }
+                if (bytes.remaining() < 4 * (distinct + 1)) {
+                    digest.update(bytes.array(), 0, bytes.position());
+                    bytes.clear();
+                    if (bytes.capacity() < 4 * (distinct + 1)) {
+                        bytes = ByteBuffer.allocate(8 * (distinct + 1));
+                    }
+                }
+                bytes.putInt(distinct);
+                for (int j = 0; j < length; j++) {
+                    if (j == 0 || literals[j] != literals[j-1]) bytes.putInt(literals[j]);
+                }
+            }
+            digest.update(bytes.array(), 0, bytes.position());
+            if (firsts != null) {
+                firsts.update(firstVars.array(), 0, firstVars.position());
+                digest.update(firsts.digest());
+            }
+        } finally {
+            reader.close();
+        }
+
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return hex.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // every JVM has SHA-256
+        }
+    }
+
+    private static void update(MessageDigest digest, String line) {
+        digest.update((line == null ? "-" : line.trim()).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) '\n');
+    }
+
+    /**
+     * Returns the cached result with the given key, found with the given mode,
+     * or null if there is none. A damaged entry is deleted.
+     */
+    public OrderingResult get(String key, ORDERING ordering) {
+        OrderingMetrics metrics = new OrderingMetrics();
+        File file = entry(key);
+        if (!file.isFile()) return null;
+        OrderFile entry;
+        try {
+            entry = OrderFile.read(file.getPath());
+            if (entry.kClause == null) throw new IOException("No k in " + file);
+        } catch (IOException e) {
+            file.delete(); // damaged, or already evicted
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+
+        int[] order = entry.order;
+        int[][] kClause = entry.kClause;
+        int sumK = 0;
+        for (int clause = 1; clause < kClause.length; clause++) {
+            sumK += kClause[clause][0] + kClause[clause][1];
+        }
+        metrics.lap("cache");
+        return new OrderingResult(ordering, order, kClause, sumK, metrics);
+    }
+
+    /**
+     * Adds the given result under the given key, replacing any entry with the
+     * key, and evicts the least recently used entries if the cache is full
+     */
+    public void put(String key, OrderingResult result) throws IOException {
+        File tmp = File.createTempFile(key, ".tmp", dir);
+        try {
+            int clauses = result.kClause.length - 1;
+            OrderFile.write(tmp.getPath(), result.order.length - 1 - clauses, clauses,
+                    result.order, result.kClause);
+            Files.move(tmp.toPath(), entry(key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            tmp.delete();
+        }
+        evict();
+    }
+
+    /**
+     * Deletes the least recently used entries until the entries take at most
+     * maxBytes
+     */
+    synchronized void evict() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+        if (files == null) return;
+        List<long[]> entries = new ArrayList<>(); // last use, size, index
+        long total = 0;
+        for (int i = 0; i < files.length; i++) {
+            long size = files[i].length();
+            total += size;
+            entries.add(new long[] {files[i].lastModified(), size, i});
+        }
+        if (total <= maxBytes) return;
+
+        entries.sort((a, b) -> Long.compare(a[0], b[0]));
+        for (long[] e : entries) {
+            if (total <= maxBytes) break;
+            if (files[(int) e[2]].delete() || !files[(int) e[2]].exists()) {
+                total -= e[1];
+            }
+        }
+    }
+
+    private File entry(String key) {
+        return new File(dir, key + SUFFIX);
+    }
+}
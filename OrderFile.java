@@ -0,0 +1,252 @@
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+
+/**
+ * A compact binary file holding an order, and optionally kLeft and kRight of
+ * every clause, as an alternative to the "c ORDER: ..." comment line.
+ *
+ * The file starts with a header of 16 bytes (big-endian): the magic number
+ * "OCNO", the version, flags (bit 0: k values follow), the number of
+ * variables and the number of clauses. Then come the variables+clauses
+ * elements of the order, each as a varint holding whether it is a variable
+ * (lowest bit) and the zigzag-encoded difference from the previous element
+ * of the same kind, so orders that follow the numbering take about a byte
+ * per element. With k values, kLeft and kRight of clauses 1..clauses follow
+ * as zigzag varints.
+ *
+ * Files are read by memory-mapping them and decoding the varints straight
+ * into the arrays of the order, without any intermediate objects.
+ */
+public class OrderFile {
+    private static final int MAGIC = 0x4f434e4f; // "OCNO"
+    private static final byte VERSION = 1;
+    private static final int HEADER = 16;
+    private static final int FLAG_K = 1;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_VARLONG = 10;
+
+    final int variables;
+    final int clauses;
+    /** The order, as <code>OrderedCNF.order</code> */
+    final int[] order;
+    /** kLeft and kRight of each clause, null if the file has none */
+    final int[][] kClause;
+
+    private OrderFile(int variables, int clauses, int[] order, int[][] kClause) {
+        this.variables = variables;
+        this.clauses = clauses;
+        this.order = order;
+        this.kClause = kClause;
+    }
+
+    /**
+     * Writes the given order of a formula with the given number of variables
+     * and clauses to the file at the given path, with the k values in kClause
+     * unless it is null
+     */
+    public static void write(String path, int variables, int clauses, int[] order,
+            int[][] kClause) throws IOException {
+        if (order.length != variables + clauses + 1) {
+            throw new IllegalArgumentException("Order of " + (order.length - 1)
+                    + " elements for " + variables + " variables and " + clauses + " clauses");
+        }
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+            buffer.putInt(MAGIC).put(VERSION).put((byte) (kClause != null ? FLAG_K : 0))
+                  .putShort((short) 0).putInt(variables).putInt(clauses);
+
+            int lastClause = 0;
+            int lastVar = 0;
+            for (int i = 1; i < order.length; i++) {
+                if (buffer.remaining() < MAX_VARLONG) drain(channel, buffer);
+                int e = order[i];
+                long token;
+                if (e < 0) {
+                    token = zigzag(-e - lastVar) << 1 | 1;
+                    lastVar = -e;
+                } else {
+                    token = zigzag(e - lastClause) << 1;
+                    lastClause = e;
+                }
+                putVarlong(buffer, token);
+            }
+            if (kClause != null) {
+                for (int clause = 1; clause <= clauses; clause++) {
+                    if (buffer.remaining() < 2 * MAX_VARLONG) drain(channel, buffer);
+                    putVarlong(buffer, zigzag(kClause[clause][0]));
+                    putVarlong(buffer, zigzag(kClause[clause][1]));
+                }
+            }
+            drain(channel, buffer);
+        }
+    }
+
+    /**
+     * Whether the file at the given path starts with the magic number of an
+     * order file
+     */
+    public static boolean isOrderFile(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            while (magic.hasRemaining() && channel.read(magic) >= 0) {
+                // read the first four bytes, if there are four
+            }
+            return !magic.hasRemaining() && magic.getInt(0) == MAGIC;
+        }
+    }
+
+    /**
+     * Reads the file at the given path into a new order (and kClause, if the
+     * file has k values)
+     */
+    public static OrderFile read(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = map(channel, path);
+            int variables = buffer.getInt(8);
+            int clauses = buffer.getInt(12);
+            boolean hasK = (buffer.get(5) & FLAG_K) != 0;
+            int[] order = new int[variables + clauses + 1];
+            int[][] kClause = hasK ? new int[clauses + 1][2] : null;
+            decode(buffer, path, variables, clauses, order, kClause);
+            return new OrderFile(variables, clauses, order, kClause);
+        }
+    }
+
+    /**
+     * Reads the file at the given path straight into the given order, and
+     * into kClause if the file has k values, for a formula with the given
+     * number of variables and clauses
+     * @return whether kClause was read
+     */
+    public static boolean read(String path, int variables, int clauses, int[] order,
+            int[][] kClause) throws IOException {
+        try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = map(channel, path);
+            if (buffer.getInt(8) != variables || buffer.getInt(12) != clauses) {
+                throw new IOException(path + " is an order of " + buffer.getInt(8) + " variables and "
+                        + buffer.getInt(12) + " clauses, not " + variables + " and " + clauses);
+            }
+            boolean hasK = (buffer.get(5) & FLAG_K) != 0;
+            decode(buffer, path, variables, clauses, order, hasK ? kClause : null);
+            return hasK;
+        }
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, String path) throws IOException {
+        long size = channel.size();
+        if (size < HEADER) {
+            throw new IOException(path + " is not an order file");
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(path + " is too large for an order file");
+        }
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not an order file");
+        }
+        if (buffer.get(4) != VERSION) {
+            throw new IOException(path + " has order file version " + buffer.get(4)
+                    + ", expected " + VERSION);
+        }
+        // Every element takes at least a byte, so larger counts are damage
+        int variables = buffer.getInt(8);
+        int clauses = buffer.getInt(12);
+        if (variables < 0 || clauses < 0 || (long) variables + clauses > size - HEADER) {
+            throw new IOException(path + " has a bad header: " + variables + " variables and "
+                    + clauses + " clauses in " + size + " bytes");
+        }
+        return buffer;
+    }
+
+    /**
+     * Decodes the elements (and k values, unless kClause is null) after the
+     * header, checking that every variable and clause occurs exactly once
+     */
+    private static void decode(ByteBuffer buffer, String path, int variables, int clauses,
+            int[] order, int[][] kClause) throws IOException {
+        buffer.position(HEADER);
+        boolean[] seen = new boolean[variables + clauses + 1]; // variables first
+        int lastClause = 0;
+        int lastVar = 0;
+        try {
+            for (int i = 1; i <= variables + clauses; i++) {
+                long token = getVarlong(buffer);
+                int delta = unzigzag(token >>> 1);
+                int id;
+                if ((token & 1) != 0) {
+                    lastVar += delta;
+                    id = lastVar;
+                    if (id < 1 || id > variables || seen[id]) {
+                        throw new IOException(path + ": bad or repeated variable " + id);
+                    }
+                    seen[id] = true;
+                    order[i] = -id;
+                } else {
+                    lastClause += delta;
+                    id = lastClause;
+                    if (id < 1 || id > clauses || seen[variables + id]) {
+                        throw new IOException(path + ": bad or repeated clause " + id);
+                    }
+                    seen[variables + id] = true;
+                    order[i] = id;
+                }
+            }
+            if (kClause != null) {
+                for (int clause = 1; clause <= clauses; clause++) {
+                    kClause[clause][0] = unzigzag(getVarlong(buffer));
+                    kClause[clause][1] = unzigzag(getVarlong(buffer));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException(path + " is truncated");
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static long zigzag(int value) {
+        return ((value << 1) ^ (value >> 31)) & 0xffffffffL;
+    }
+
+    private static int unzigzag(long value) {
+        int v = (int) value;
+        return (v >>> 1) ^ -(v & 1);
+    }
+
+    /**
+     * Puts the value in groups of 7 bits, lowest first, the top bit of each
+     * byte telling whether more follow
+     */
+    private static void putVarlong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7fL) != 0) {
+            buffer.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static long getVarlong(ByteBuffer buffer) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 7 * MAX_VARLONG; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Bad varint in order file");
+    }
+}
@@ -0,0 +1,285 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+
+
+/**
+ * Checks an order of a formula made elsewhere (by another tool, an earlier
+ * run or the cache) and measures its width, without running any heuristic.
+ * The order is read from the "c ORDER: ..." line of the instance, or from a
+ * separate file holding such a line or in the binary format of
+ * <code>OrderFile</code>. Without a "c ORDER:" line, the "c_var ORDER:" and
+ * "c_cla ORDER:" lines of DOUBLE are merged into an order as DOUBLE does,
+ * and the order is invalid if DOUBLE cannot merge them.
+ *
+ * Checking that the order holds every clause and variable exactly once takes
+ * one pass over it. kLeft and kRight of every clause come from
+ * <code>OrderedCNF.countK</code>, and the number of variables and clauses
+ * across every cut (those with elements on both sides, counting a clause
+ * together with its variables) from one pass over the literals, so the whole
+ * check runs in time linear in the size of the formula.
+ *
+ * Usage: OrderVerifier &lt;cnf file&gt; [order file] [-cuts]
+ * With -cuts, the counts of every cut are printed too. Exits with status 1
+ * if the order is not valid.
+ */
+public class OrderVerifier {
+    final OrderedCNF cnf;
+    final int[] order;
+    int maxK, sumK;
+    /** Clauses on the left side of each cut, see <code>CutSets</code> */
+    CutSets cuts;
+    /** Variables and clauses with elements on both sides of each cut */
+    int[] varsAcross, clausesAcross;
+
+    private OrderVerifier(OrderedCNF cnf, int[] order) {
+        this.cnf = cnf;
+        this.order = order;
+    }
+
+    /**
+     * Returns null if order[1..] holds every clause (as c) and variable (as
+     * -v) of a formula with the given numbers of variables and clauses
+     * exactly once, and otherwise describes the first problem found
+     */
+    static String check(int[] order, int variables, int clauses) {
+        if (order.length != variables + clauses + 1) {
+            return "order has " + (order.length - 1) + " elements, expected " + (variables + clauses)
+                    + " (" + clauses + " clauses and " + variables + " variables)";
+        }
+        int[] clausePos = new int[clauses + 1];
+        int[] varPos = new int[variables + 1];
+        for (int i = 1; i < order.length; i++) {
+            int e = order[i];
+            if (e == 0) {
+                return "position " + i + " is empty";
+            } else if (e > 0) {
+                if (e > clauses) return "clause " + e + " at position " + i + " is not in the formula";
+                if (clausePos[e] > 0) {
+                    return "clause " + e + " is at positions " + clausePos[e] + " and " + i;
+                }
+                clausePos[e] = i;
+            } else {
+                if (-e > variables) return "variable " + -e + " at position " + i + " is not in the formula";
+                if (varPos[-e] > 0) {
+                    return "variable " + -e + " is at positions " + varPos[-e] + " and " + i;
+                }
+                varPos[-e] = i;
+            }
+        }
+        return null; // as many elements as clauses and variables, none twice
+    }
+
+    /**
+     * Reads the elements of an order line of the form "c ORDER: c42 v13 ...",
+     * with or without the given prefix, into a new order array
+     * @throws IOException if a token is neither c&lt;number&gt; nor v&lt;number&gt;
+     */
+    static int[] parseLine(String line, String prefix) throws IOException {
+        int from = line.startsWith(prefix) ? prefix.length() : 0;
+        int[] order = new int[1 + line.length() / 3];
+        int n = 0;
+        int i = from;
+        while (i < line.length()) {
+            char ch = line.charAt(i);
+            if (ch <= ' ') {
+                i++;
+                continue;
+            }
+            int start = i;
+            int value = 0;
+            i++;
+            while (i < line.length() && line.charAt(i) > ' ') {
+                char d = line.charAt(i++);
+                if (d < '0' || d > '9' || value > (Integer.MAX_VALUE - 9) / 10) {
+                    value = -1;
+                    break;
+                }
+                value = 10 * value + (d - '0');
+            }
+            if ((ch != 'c' && ch != 'v') || value <= 0) {
+                int end = line.indexOf(' ', start);
+                throw new IOException("bad element \"" + line.substring(start, end < 0 ? line.length() : end)
+                        + "\" in the order");
+            }
+            if (n + 1 == order.length) order = Arrays.copyOf(order, 2 * order.length);
+            order[++n] = (ch == 'c') ? value : -value;
+        }
+        return Arrays.copyOf(order, n + 1);
+    }
+
+    /**
+     * Returns the first line of the text file at the given path starting with
+     * the given prefix, or null if it has none
+     */
+    static String findLine(String path, String prefix) throws IOException {
+        try (BufferedReader in = new BufferedReader(new FileReader(path))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.startsWith(prefix)) return line;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Returns the order DOUBLE makes of the given formula from the given
+     * "c_var ORDER:" and "c_cla ORDER:" lines
+     * @throws IOException if the lines do not order all variables and all
+     * clauses once, or cannot be merged
+     */
+    static int[] merge(OrderedCNF cnf, String varLine, String claLine) throws IOException {
+        int[] vars = parseLine(varLine, OrderedCNF.ORDER_VAR_STRING);
+        String problem = check(vars, cnf.variables, 0);
+        if (problem != null) throw new IOException("variable order: " + problem);
+        int[] cla = parseLine(claLine, OrderedCNF.ORDER_CLA_STRING);
+        problem = check(cla, 0, cnf.clauses);
+        if (problem != null) throw new IOException("clause order: " + problem);
+        try {
+            return cnf.mergeLinearOrders(vars, cla).clone();
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+    }
+
+    /**
+     * Computes k of every clause, and the counts of every cut, of a valid
+     * order of the formula
+     */
+    private void measure() {
+        IncidenceGraph graph = cnf.graph();
+        sumK = cnf.useOrder(order);
+        for (int c = 1; c <= cnf.clauses; c++) {
+            maxK = Math.max(maxK, cnf.kClause[c][0] + cnf.kClause[c][1]);
+        }
+        cuts = new CutSets(order, cnf.clauses);
+
+        // A variable (clause) is across the cuts from the first to the last
+        // position of it and its clauses (variables), less one
+        int n = order.length;
+        int[] pos = new int[cnf.clauses + cnf.variables + 1]; // clauses, then variables
+        for (int i = 1; i < n; i++) {
+            int e = order[i];
+            pos[e > 0 ? e : cnf.clauses - e] = i;
+        }
+        varsAcross = new int[n];
+        clausesAcross = new int[n];
+        for (int var = 1; var <= cnf.variables; var++) {
+            int first = pos[cnf.clauses + var];
+            int last = first;
+            for (int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++) {
+                int p = pos[graph.varClauses[j]];
+                first = Math.min(first, p);
+                last = Math.max(last, p);
+            }
+            varsAcross[first]++;
+            varsAcross[last]--;
+        }
+        for (int c = 1; c <= cnf.clauses; c++) {
+            int first = pos[c];
+            int last = first;
+            for (int j = graph.claOffsets[c]; j < graph.claOffsets[c+1]; j++) {
+                int p = pos[cnf.clauses + graph.claVars[j]];
+                first = Math.min(first, p);
+                last = Math.max(last, p);
+            }
+            clausesAcross[first]++;
+            clausesAcross[last]--;
+        }
+        for (int i = 1; i < n; i++) {
+            varsAcross[i] += varsAcross[i-1];
+            clausesAcross[i] += clausesAcross[i-1];
+        }
+    }
+
+    private static int max(int[] counts) {
+        int max = 0;
+        for (int count : counts) max = Math.max(max, count);
+        return max;
+    }
+
+    public static void main(String[] args) throws IOException {
+        boolean printCuts = args.length > 0 && args[args.length - 1].equals("-cuts");
+        int files = printCuts ? args.length - 1 : args.length;
+        if (files < 1) {
+            System.out.println("Usage: OrderVerifier <cnf file> [order file] [-cuts]");
+            return;
+        }
+        OrderedCNF cnf = OrderedCNF.parse(args[0]);
+
+        if (files > 1 && !new File(args[1]).isFile()) {
+            System.out.println("No order file " + args[1]);
+            System.exit(1);
+        }
+        int[] order;
+        int[][] storedK = null; // k given with a binary order
+        try {
+            if (files > 1 && OrderFile.isOrderFile(args[1])) {
+                OrderFile file = OrderFile.read(args[1]);
+                if (file.variables != cnf.variables || file.clauses != cnf.clauses) {
+                    throw new IOException("the order is for " + file.variables + " variables and "
+                            + file.clauses + " clauses, the formula has " + cnf.variables + " and "
+                            + cnf.clauses);
+                }
+                order = file.order;
+                storedK = file.kClause;
+            } else {
+                String line = (files > 1) ? findLine(args[1], OrderedCNF.ORDER_STRING) : cnf.orderLine;
+                String varLine = (files > 1) ? findLine(args[1], OrderedCNF.ORDER_VAR_STRING)
+                        : cnf.varOrderLine;
+                String claLine = (files > 1) ? findLine(args[1], OrderedCNF.ORDER_CLA_STRING)
+                        : cnf.claOrderLine;
+                if (line != null) {
+                    order = parseLine(line, OrderedCNF.ORDER_STRING);
+                } else if (varLine != null && claLine != null) {
+                    order = merge(cnf, varLine, claLine);
+                } else {
+                    throw new IOException("no \"" + OrderedCNF.ORDER_STRING.trim() + "\" line, nor \""
+                            + OrderedCNF.ORDER_VAR_STRING.trim() + "\" and \""
+                            + OrderedCNF.ORDER_CLA_STRING.trim() + "\" lines, found in "
+                            + args[files > 1 ? 1 : 0]);
+                }
+            }
+        } catch (IOException e) {
+            System.out.println("Order: invalid, " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        String problem = check(order, cnf.variables, cnf.clauses);
+        if (problem != null) {
+            System.out.println("Order: invalid, " + problem);
+            System.exit(1);
+        }
+
+        OrderVerifier verifier = new OrderVerifier(cnf, order);
+        verifier.measure();
+        System.out.println("Order: valid, " + cnf.clauses + " clauses and " + cnf.variables + " variables");
+        System.out.println("Max k: " + verifier.maxK);
+        System.out.println("Sum k: " + verifier.sumK);
+        System.out.println("Max variables across a cut: " + max(verifier.varsAcross));
+        System.out.println("Max clauses across a cut: " + max(verifier.clausesAcross));
+        if (storedK != null) {
+            int differs = 0;
+            for (int c = 1; c <= cnf.clauses; c++) {
+                if (storedK[c][0] != cnf.kClause[c][0] || storedK[c][1] != cnf.kClause[c][1]) {
+                    if (differs++ == 0) {
+                        System.out.println("Stored k of clause " + c + " is " + storedK[c][0] + "+"
+                                + storedK[c][1] + ", computed " + cnf.kClause[c][0] + "+"
+                                + cnf.kClause[c][1]);
+                    }
+                }
+            }
+            System.out.println("Stored k: " + (differs == 0 ? "matches" : differs + " clauses differ"));
+        }
+        if (printCuts) {
+            System.out.println("cut\tclauses left\tvariables across\tclauses across");
+            for (int i = 1; i < order.length - 1; i++) {
+                System.out.println(i + "\t" + verifier.cuts.size(i) + "\t" + verifier.varsAcross[i]
+                        + "\t" + verifier.clausesAcross[i]);
+            }
+        }
+        if (storedK != null && !Arrays.deepEquals(storedK, cnf.kClause)) System.exit(1);
+    }
+}
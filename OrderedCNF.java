@@ -1,5 +1,17 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
 
 
@@ -13,6 +25,15 @@ public class OrderedCNF {
     private static int max_k = 17;
     private static int GreedyleftShiftingRounds = 7;
     private static int BaryleftShiftingRounds = 7;
+    private static AVERAGE BaryVariant = AVERAGE.MEAN;
+    private static double BaryMinDisplacement = 0; // per element, stop below this
+    private static int BaryCheckInterval = 0; // rounds between width estimates, 0 for none
+    private static int PortfolioSize = 4; // starts in PORTFOLIO, whatever the number of processors
+    private static boolean Preprocess = false; // shrink the formula for NONE, K and PORTFOLIO, see Preprocessor
+    private static boolean PreSubsume = false; // also remove subsumed clauses
+    private static boolean PrePropagate = false; // also propagate unit clauses
+    private static boolean PrePure = false; // also remove clauses with pure literals
+    private static boolean SplitComponents = false; // order connected components apart, see Components
     private boolean[] isNonEmpty; // whether a clause is empty or not
     
     
@@ -30,8 +51,16 @@ public class OrderedCNF {
     public int[] varPositionInTotalOrdering; //keeps track of where variables are positioned
     public int[] varOrder; //Gives the ordering of all variables
     public int[][] kClause;
-    BitSet[] literals;
-    BitSet[] clausesAtCut; // clauses on 'left side' of the index pos
+    IncidenceGraph literals; // the literals of each clause, see put()
+    CutSets clausesAtCut; // clauses on 'left side' of the index pos
+    Barycentre bary; // buffers reused by every barycentre() round
+    String orderLine, varOrderLine, claOrderLine; // order lines given with the instance
+    int[] inputVarOrder; // variables in the order they first occur in the input
+    int inputVars = 0;   // number of variables in inputVarOrder
+    boolean quiet = false; // whether order() runs without printing
+    private boolean shrunk = false; // made by a Preprocessor, so not shrunk again
+    private boolean split = false;  // a component of another formula, so not split again
+    OrderingMetrics metrics = new OrderingMetrics(); // work since the last order() returned
     final static String ORDER_STRING = "c ORDER: ";
     final static String ORDER_VAR_STRING = "c_var ORDER: ";
     final static String ORDER_CLA_STRING = "c_cla ORDER: ";
@@ -49,6 +78,21 @@ public class OrderedCNF {
       }
     }
 
+    /**
+     * Shuffles ar[1..ar.length-1], as in clauseOrder and varOrder, using the
+     * given random generator
+     */
+    static void shuffleOrder(int[] ar, Random rnd)
+    {
+      for (int i = ar.length - 1; i > 1; i--)
+      {
+        int index = 1 + rnd.nextInt(i);
+        int a = ar[index];
+        ar[index] = ar[i];
+        ar[i] = a;
+      }
+    }
+
     /** 
      * Constructs a new formula based on instance description read from stdin.
      * If the boolean <code>orderGiven</code> is set, the order is assumed to
@@ -60,8 +104,6 @@ public class OrderedCNF {
     static OrderedCNF readCNF (ORDERING ordering,int rounds) { // read from stdin
         Scanner sc = new Scanner( System.in );
         boolean headerFound = false;
-        ArrayList<ArrayList<Integer>> varGraph;
-        ArrayList<ArrayList<Integer>> claGraph;
         String stringOrder = null;
         String stringVarOrder = null;
         String stringClaOrder = null;
@@ -135,355 +177,419 @@ public class OrderedCNF {
         } 
         
         cnf = new OrderedCNF(numVars, numClauses);
-        varGraph = new ArrayList<ArrayList<Integer>>();
-        claGraph = new ArrayList<ArrayList<Integer>>();
-        
-        //Add lists to hold clauses for each variable.
-        for(int i = 0; i<numVars +1;i++){
-        	varGraph.add(new ArrayList<Integer>());
-        }
         
-      //Add lists to hold variables for each clause.
-        for(int i = 0; i<numClauses +1; i++){
-        	claGraph.add(new ArrayList<Integer>());
-        }
- 
-        /**
-         * Timestamping - CEG
-         */
-        long start = System.nanoTime();
-        
-        boolean orderGiven = true;
-        if(ordering.equals(ORDERING.K)){
-			orderGiven = false;
-			stringVarOrder = ORDER_VAR_STRING;
-			stringClaOrder = ORDER_CLA_STRING;
-        }
-        BitSet inOrder = new BitSet(cnf.variables + 1);
         // Reading in the clauses
         for (int clause = 1; clause <= cnf.clauses; clause++) {
             String line = sc.nextLine();
-            if(!orderGiven){
-            	stringClaOrder += " c" + clause;
-            }
             for (String token : line.split(" ")) {
                 int value = Integer.parseInt(token);
                 if (value == 0) break;
                 boolean sign = (value > 0);
                 if (!sign) value = -value;
                 
-                //If order is not given, build an ordering based on input.
-                if(!orderGiven){
-	                //Just build variable ordering from input.
-	                if(!inOrder.get(value)){
-	                	inOrder.set(value); //Variable is processed.
-	                	stringVarOrder += " v" + value;
-	                }  
-                }
-                cnf.put(clause, value, sign);
                 //May hit multiple values, unless formula is preprocessed. //TODO: REVIEW THIS
-                if(varGraph.get(Math.abs(value)) != null){
-                
-                }
-                //Update graphs. 
-                varGraph.get(Math.abs(value)).add(clause);
-                claGraph.get(clause).add(Math.abs(value));
+                cnf.put(clause, value, sign);
             }
         }
+        cnf.metrics.lap("parse");
         
-        //Duration in milliseconds.
-        long duration = (long) ((System.nanoTime() - start)/Math.pow(10,6));
-        double durationInSec = duration/(double)1000;
-        //System.out.println("Reading Clauses - Running time: " + durationInSec + " seconds.");
-        
+        return orderCNF(cnf, ordering, rounds,
+                stringOrder, stringVarOrder, stringClaOrder);
+    }
+
+    /**
+     * Constructs a new formula based on the instance in the file at the given
+     * path, in the same way as <code>readCNF(ordering, rounds)</code> does for
+     * stdin. The file is parsed byte by byte by a <code>DimacsReader</code>,
+     * and may be gzip-compressed if its name ends in ".gz".
+     */
+    static OrderedCNF readCNF (String path, ORDERING ordering, int rounds) throws IOException {
+        OrderedCNF cnf = parse(path);
+        if (ordering.equals(ORDERING.SINGLE) && cnf.orderLine == null) {
+            throw new IOException("No \"" + ORDER_STRING + "\" line found");
+        }
+        if ((ordering.equals(ORDERING.DOUBLE) || ordering.equals(ORDERING.DOUBLEK))
+                && (cnf.varOrderLine == null || cnf.claOrderLine == null)) {
+            throw new IOException("No \"" + ORDER_VAR_STRING + "\" and \""
+                    + ORDER_CLA_STRING + "\" lines found");
+        }
+        return orderCNF(cnf, ordering, rounds,
+                cnf.orderLine, cnf.varOrderLine, cnf.claOrderLine);
+    }
+
+    /**
+     * Reads the formula in the file at the given path, with the order lines
+     * found in its comments, without ordering it. See <code>order</code>.
+     * Large files are parsed on all available processors.
+     */
+    public static OrderedCNF parse(String path) throws IOException {
+        return parse(path, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Reads the formula in the file at the given path as <code>parse(path)</code>,
+     * with the clauses parsed by up to the given number of threads (see
+     * <code>ParallelParser</code>), on a pool of their own. The result is the
+     * same for any number.
+     */
+    public static OrderedCNF parse(String path, int threads) throws IOException {
+        DimacsReader reader = new DimacsReader(path);
+        try {
+            reader.readHeader();
+            OrderedCNF cnf = new OrderedCNF(reader.variables, reader.clauses);
+            cnf.orderLine = reader.orderLine;
+            cnf.varOrderLine = reader.varOrderLine;
+            cnf.claOrderLine = reader.claOrderLine;
+
+            // Compressed files can only be read from the start
+            long offset = reader.offset();
+            long size = GzipChannel.isGzip(path) ? offset : Files.size(Paths.get(path));
+            int chunks = (int) Math.min(threads, (size - offset) / ParallelParser.MIN_CHUNK);
+            if (chunks > 1) {
+                ExecutorService pool = Executors.newFixedThreadPool(chunks);
+                try (FileChannel channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ)) {
+                    cnf.putChunks(ParallelParser.parse(channel, offset, chunks, cnf.variables, pool), pool);
+                } finally {
+                    pool.shutdown();
+                }
+                cnf.graph();
+                cnf.metrics.lap("parse");
+                return cnf;
+            }
+
+            // Reading in the clauses
+            for (int clause = 1; clause <= cnf.clauses; clause++) {
+                int length = reader.nextClause();
+                if (length < 0) {
+                    throw new IOException("Expected " + cnf.clauses + " clauses, found " + (clause-1));
+                }
+                for (int j = 0; j < length; j++) {
+                    int value = reader.clause[j];
+                    boolean sign = (value > 0);
+                    if (!sign) value = -value;
+                    cnf.put(clause, value, sign);
+                }
+            }
+            cnf.graph();
+            cnf.metrics.lap("parse");
+            return cnf;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /** 
+     * Generates or finds an order for a formula whose clauses have been read,
+     * using the order comment lines (if any) found in the instance, as the
+     * command line tool does: progress is printed, and the NONE and K modes
+     * exit once the order is found. 
+     */
+    private static OrderedCNF orderCNF(OrderedCNF cnf, ORDERING ordering, int rounds,
+            String stringOrder, String stringVarOrder, String stringClaOrder) {
+        cnf.orderLine = stringOrder;
+        cnf.varOrderLine = stringVarOrder;
+        cnf.claOrderLine = stringClaOrder;
+        cnf.order(ordering, rounds);
+        if (ordering.equals(ORDERING.NONE) || ordering.equals(ORDERING.K)) {
+            System.exit(0);
+        }
+        return cnf;
+    }
+
+    /**
+     * Sets how the barycentre rounds of K and PORTFOLIO run: the average a
+     * pass moves elements to (see <code>AVERAGE</code>), the movement per
+     * element below which two passes in a row end the rounds (0 to only stop
+     * once nothing moves), and the number of rounds between estimates of the
+     * width, keeping the orders with the best estimate (0 for none)
+     */
+    static void setBarycentre(AVERAGE variant, double minDisplacement, int checkInterval) {
+        if (variant == null || minDisplacement < 0 || checkInterval < 0) {
+            throw new IllegalArgumentException("Bad barycentre settings " + variant + ", "
+                    + minDisplacement + ", " + checkInterval);
+        }
+        BaryVariant = variant;
+        BaryMinDisplacement = minDisplacement;
+        BaryCheckInterval = checkInterval;
+    }
+
+    /**
+     * Turns the preprocessing before NONE, K and PORTFOLIO (see
+     * <code>Preprocessor</code>) on or off. The other flags add removing
+     * subsumed clauses, propagating unit clauses and removing clauses with
+     * pure literals to it, and have no effect without preprocess.
+     */
+    static void setPreprocessing(boolean preprocess, boolean subsume, boolean propagate,
+            boolean pure) {
+        Preprocess = preprocess;
+        PreSubsume = subsume;
+        PrePropagate = propagate;
+        PrePure = pure;
+    }
+
+    /**
+     * Turns ordering the connected components apart and in parallel, for
+     * NONE, K and PORTFOLIO (see <code>Components</code>), on or off
+     */
+    static void setSplitComponents(boolean split) {
+        SplitComponents = split;
+    }
+
+    /**
+     * Sets the number of starts of PORTFOLIO. The order found depends on it
+     * and not on the number of processors, which only bounds how many
+     * starts run at once.
+     */
+    static void setPortfolioSize(int starts) {
+        if (starts < 1) throw new IllegalArgumentException("PORTFOLIO needs at least one start, not " + starts);
+        PortfolioSize = starts;
+    }
+
+    /**
+     * Describes the settings that, with the formula (and its order lines for
+     * SINGLE, DOUBLE and DOUBLEK), determine the order found by
+     * <code>order(ordering, rounds)</code>
+     */
+    static String settings(ORDERING ordering, int rounds) {
+        String pre = !Preprocess ? "" : " preprocess subsume=" + PreSubsume
+                + " propagate=" + PrePropagate + " pure=" + PrePure;
+        if (SplitComponents) pre += " components";
+        switch(ordering){
+        case NONE:
+            return ordering + " shift=" + GreedyleftShiftingRounds + pre;
+        case K:
+        case PORTFOLIO:
+            String s = ordering + " rounds=" + rounds + " shift=" + BaryleftShiftingRounds
+                    + " variant=" + BaryVariant + " minDisplacement=" + BaryMinDisplacement
+                    + " checkInterval=" + BaryCheckInterval + pre;
+            return (ordering == ORDERING.PORTFOLIO) ? s + " starts=" + PortfolioSize : s;
+        default:
+            return ordering.toString();
+        }
+    }
+
+    /**
+     * Generates or finds an order for this formula with the given mode, using
+     * the order lines given with the instance for SINGLE, DOUBLE and DOUBLEK,
+     * and the order of the input for K and PORTFOLIO. With Preprocess set,
+     * NONE, K and PORTFOLIO order a shrunk copy of the formula instead (see
+     * <code>Preprocessor</code>); with SplitComponents set, they order the
+     * connected components apart, in parallel, and put their orders one
+     * after another (see <code>Components</code>). Progress is printed unless
+     * <code>quiet</code> is set. The formula can be ordered again, with any
+     * mode.
+     * @param rounds Number of barycentre rounds, for K and PORTFOLIO
+     * @return The order found, with k of every clause and the metrics of
+     * each phase (including reading the formula, the first time)
+     * @throws IllegalArgumentException if the mode needs order lines that
+     * were not given, or for DOUBLE and DOUBLEK, lines that order too few
+     * clauses or variables, or for DOUBLE, lines that are not an interval
+     * ordering
+     */
+    public OrderingResult order(ORDERING ordering, int rounds) {
+        IncidenceGraph graph = graph();
+        metrics.restart();
+        if (Preprocess && !shrunk && (ordering == ORDERING.NONE || ordering == ORDERING.K
+                || ordering == ORDERING.PORTFOLIO)) {
+            return orderPreprocessed(ordering, rounds);
+        }
+        if (SplitComponents && !split && (ordering == ORDERING.NONE || ordering == ORDERING.K
+                || ordering == ORDERING.PORTFOLIO)) {
+            Components parts = new Components(this);
+            metrics.lap("split");
+            if (parts.count > 1) return orderComponents(ordering, rounds, parts);
+        }
         //System.out.println("Generating order");
         // Generating/finding an order
 
         switch(ordering){
 	        case SINGLE:
-	        	cnf.extractOrder(stringOrder);
-	        	stringVarOrder = ORDER_VAR_STRING;
-				stringClaOrder = ORDER_CLA_STRING;
-				
-				for(int i = 1 ; i < cnf.order.length ; i++){
-					if(cnf.order[i] < 0){
-						stringVarOrder += " v"+ Math.abs(cnf.order[i]);
-					}
-					else{
-						stringClaOrder+= " c" + cnf.order[i];
-					}
-					
-				}
-				// Find position for clauses in the total ordering.
-				for(int i = 1 ;i<cnf.order.length ; i++){
-					if(cnf.order[i] > 0){
-						cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-					}
-					else{
-						cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-					}
-				}
-				
-				
-	        	cnf.extractClauseOrder(stringClaOrder);
-	        	cnf.extractVarOrder(stringVarOrder);
+	        	if(orderLine == null){
+	        		throw new IllegalArgumentException("No \"" + ORDER_STRING + "\" line given");
+	        	}
+	        	extractOrder(orderLine);
+	        	projectOrder();
+	        	metrics.lap("extract");
 	        	
-	        	cnf.countK(varGraph, claGraph,true);
+	        	countK(graph,!quiet);
 	        	
-	        
-	        	System.out.println();
+	        	if(!quiet) System.out.println();
 	        	break;
 	        case NONE:
 	        	//Testing out hybrid k-interval and greedy.
-	            start = System.nanoTime();
-	        	cnf.greedyOrder();
-				
-	        	stringVarOrder = ORDER_VAR_STRING;
-				stringClaOrder = ORDER_CLA_STRING;
-				
-				for(int i = 1 ; i < cnf.order.length ; i++){
-					if(cnf.order[i] < 0){
-						stringVarOrder += " v"+ Math.abs(cnf.order[i]);
-					}
-					else{
-						stringClaOrder+= " c" + cnf.order[i];
-					}
-					
-				}
-				// Find position for clauses and variables in the total ordering.
-				for(int i = 1 ;i<cnf.order.length ; i++){
-					if(cnf.order[i] > 0){
-						cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-					}
-					else{
-						cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-					}
-				}
-				
-				
-	        	cnf.extractClauseOrder(stringClaOrder);
-	        	cnf.extractVarOrder(stringVarOrder);
-	        	
+	        	greedyOrder();
+	        	projectOrder();
+	        	metrics.lap("greedy");
 	        	
 	        	//System.out.println(" Greedy: ");
-	        	//cnf.kMergeOrderExt(varGraph, claGraph, false);
-	        	//int totalK = cnf.countK(varGraph, claGraph,true);
-	        	cnf.kMergeOrderExt(varGraph, claGraph, false);
-
-				// Find position for clauses and variables in the total ordering.
-				for(int i = 1 ;i<cnf.order.length ; i++){
-					if(cnf.order[i] > 0){
-						cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-					}
-					else{
-						cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-					}
-				}
-				
-	        	int totalK = cnf.countK(varGraph, claGraph,true);
-	        	
-
-				int lShiftrounds1 = GreedyleftShiftingRounds;
-	            while(lShiftrounds1-- > 0){
-	            
-		        	//Shift all clauses to the left
-		        	if(true){
-						for(int i = 1 ;i<cnf.order.length ; i++){
-							if(cnf.order[i] > 0){
-								cnf.order = cnf.shiftClause(cnf.order,i);
-							}
-						}
-		        	}
-		        	
-		        	
-		        	stringVarOrder = ORDER_VAR_STRING;
-					stringClaOrder = ORDER_CLA_STRING;
-					
-					for(int i = 1 ; i < cnf.order.length ; i++){
-						if(cnf.order[i] < 0){
-							stringVarOrder += " v"+ Math.abs(cnf.order[i]);
-						}
-						else{
-							stringClaOrder+= " c" + cnf.order[i];
-						}
-						
-					}
-					// Find position for clauses and variables in the total ordering.
-					for(int i = 1 ;i<cnf.order.length ; i++){
-						if(cnf.order[i] > 0){
-							cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-						}
-						else{
-							cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-						}
-					}
-					
-		        	cnf.extractClauseOrder(stringClaOrder);
-		        	cnf.extractVarOrder(stringVarOrder);
-		        	
-					//cnf.countK(varGraph, claGraph,true);
-
-		        	if(lShiftrounds1 == 0){
-		        		cnf.countK(varGraph, claGraph,true);
-		        	}
-		        	else{
-		        		 cnf.countK(varGraph, claGraph,false);
-		        	}
-					
-	            }
+	        	kMergeOrderExt(graph, false);
+	        	projectOrder();
+	        	countK(graph,!quiet);
+	        	metrics.lap("kmerge");
 
-	            //Duration in milliseconds.
-	            duration = (long) ((System.nanoTime() - start)/Math.pow(10,6));
-	            durationInSec = duration/(double)1000;
-	            //System.out.println("Greedy running time: " + durationInSec + " seconds.");
-	           System.exit(0);
-	            if(totalK > 3000){
-	            	//System.exit(0);
-	            }
-	            System.out.println(" total k : " + totalK);
+	        	//Shift clauses one at a time, rejecting moves that raise k.
+	        	KEvaluator eval = new KEvaluator(this, graph);
+	        	shiftClauses(eval, GreedyleftShiftingRounds);
+	        	projectOrder();
+	        	countK(graph,!quiet);
+	        	metrics.lap("shift");
 	        	break;
 	        case DOUBLE:
 	        	//Merge Order if there exist an interval ordering.
-	        	cnf.extractClauseOrder(stringClaOrder);
-	        	cnf.extractVarOrder(stringVarOrder);
-	        	cnf.mergeOrder(varGraph);
+	        	extractLinearOrders();
+	        	metrics.lap("extract");
+	        	mergeOrder(graph);
+	        	metrics.lap("merge");
 	        	break;
 	        case DOUBLEK:
 	        	//Merge Order if there exist an interval ordering.
-	        	cnf.extractClauseOrder(stringClaOrder);
-	        	cnf.extractVarOrder(stringVarOrder);
-	        	cnf.kMergeOrder(varGraph, claGraph, true);
+	        	extractLinearOrders();
+	        	metrics.lap("extract");
+	        	kMergeOrder(graph, true);
+	        	metrics.lap("kmerge");
 	        	break;
 	        case K:
 	        	boolean shiftcla= true;
-	        	//Merge Order if there exist an interval ordering.
-	        	cnf.extractClauseOrder(stringClaOrder);
-	        	cnf.extractVarOrder(stringVarOrder);
-	        	cnf.updatePositions();
-				// Find position for clauses and variables in the total ordering.
-
-	        	cnf.kMergeOrderExt(varGraph, claGraph, false);
-				for(int i = 1 ;i<cnf.order.length ; i++){
-					if(cnf.order[i] > 0){
-						cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-					}
-					else{
-						cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-					}
-				}
-	        	totalK = cnf.countK(varGraph, claGraph,true);
-	        	System.out.println("#variables = " + cnf.variables + " #clauses = " + cnf.clauses  );
+	        	//Start from the order of the input.
+	        	inputOrder();
+	        	kMergeOrderExt(graph, false);
+	        	projectOrder();
+	        	int totalK = countK(graph,!quiet);
+	        	if(!quiet) System.out.println("#variables = " + variables + " #clauses = " + clauses  );
+	        	metrics.lap("kmerge");
 	        	
 	        	//Reading clauses linearly can cause a bias.
 	        	//Shuffle arrays randomly so we get a better feel of heurstics
-	        	//shuffleArray(cnf.clauseOrder);
-	        	//shuffleArray(cnf.varOrder);
-	        	//cnf.updatePositions();
-
+	        	//shuffleArray(clauseOrder);
+	        	//shuffleArray(varOrder);
+	        	//updatePositions();
 
 	        	//Heuristics alternating between clause and variable orderings.
-	        	start = System.nanoTime();
-	        	for(int r = 1;r<=rounds;r++){
-	        		//System.out.print(r + ", ");
-	        		if (r%2 == 0){
-	    	        	cnf.barycentre(false, varGraph);
-
-	        		}
-	        		else{
-	    	        	cnf.barycentre(true, claGraph);
-	        		}
-	        		cnf.updatePositions();
-	        	}
-	        	cnf.updatePositions();
-	            duration = (long) ((System.nanoTime() - start)/Math.pow(10,6));
-	            durationInSec = duration/(double)1000;
-	            //System.out.println("BaryCenter: " + durationInSec + " seconds.");
-
-	            /**
-	             * Timestamping - CEG
-	             */
-	            start = System.nanoTime();
-	           //System.out.println(" Barycenter: ");
+	        	barycentreRounds(graph, rounds);
+	        	metrics.lap("barycentre");
 	            
 	            //Merge linear orders, finding lowest k.
-	            cnf.kMergeOrderExt(varGraph, claGraph, false);
+	            kMergeOrderExt(graph, false);
+	            projectOrder();
+	            totalK = countK(graph,!quiet);
+	            metrics.lap("kmerge");
 	            
 	            /**
 	             * The stuff below is to optimize the linear ordering after
 	             * k-merging.
 	             */
-	            
-				// Find position for clauses and variables in the total ordering.
-				for(int i = 1 ;i<cnf.order.length ; i++){
-					if(cnf.order[i] > 0){
-						cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-					}
-					else{
-						cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-					}
-				}
-				
-				
-				totalK = cnf.countK(varGraph, claGraph,true);
-				 
-	            int lShiftrounds2 = BaryleftShiftingRounds;
-	            while(lShiftrounds2-- > 0){
-	            
-		        	//Shift all clauses to the left
-		        	if(shiftcla){
-						for(int i = 1 ;i<cnf.order.length ; i++){
-							if(cnf.order[i] > 0){
-								cnf.order = cnf.shiftClause(cnf.order,i);
-							}
-						}
-		        	}
-		        	
-		        	stringVarOrder = ORDER_VAR_STRING;
-					stringClaOrder = ORDER_CLA_STRING;
-					
-					for(int i = 1 ; i < cnf.order.length ; i++){
-						if(cnf.order[i] < 0){
-							stringVarOrder += " v"+ Math.abs(cnf.order[i]);
-						}
-						else{
-							stringClaOrder+= " c" + cnf.order[i];
-						}
-						
-					}
-					// Find position for clauses and variables in the total ordering.
-					for(int i = 1 ;i<cnf.order.length ; i++){
-						if(cnf.order[i] > 0){
-							cnf.clausePositionInTotalOrdering[cnf.order[i]] = i;
-						}
-						else{
-							cnf.varPositionInTotalOrdering[Math.abs(cnf.order[i])] = i;
-						}
-					}
-					
-		        	cnf.extractClauseOrder(stringClaOrder);
-		        	cnf.extractVarOrder(stringVarOrder);
-		        	
-		        	int temp;
-		        	if(lShiftrounds2 == 0){
-		        		temp = cnf.countK(varGraph, claGraph,true);
-		        	}
-		        	else{
-		        		temp = cnf.countK(varGraph, claGraph,false);
-		        	}
-		        	if(temp < totalK) totalK = temp;
+	            //Shift clauses one at a time, rejecting moves that raise k.
+	            if(shiftcla){
+	            	KEvaluator shiftEval = new KEvaluator(this, graph);
+	            	shiftClauses(shiftEval, BaryleftShiftingRounds);
+	            	projectOrder();
 	            }
-	            System.out.println(" total k : " + totalK);
-	            //Duration in milliseconds.
-	            duration = (long) ((System.nanoTime() - start)/Math.pow(10,6));
-	            durationInSec = duration/(double)1000;
-	            //System.out.println("K Merging running time: " + durationInSec + " seconds.");
-	            System.exit(0);
+	            int temp = countK(graph,!quiet);
+	            if(temp < totalK) totalK = temp;
+	            if(!quiet) System.out.println(" total k : " + totalK);
+	            metrics.lap("shift");
+	        	break;
+	        case PORTFOLIO:
+	        	//K mode from several starts in parallel, keeping the best.
+	        	inputOrder();
+	        	KEvaluator best = portfolio(graph, rounds, PortfolioSize);
+	        	countK(graph,!quiet);
+	            if(!quiet) System.out.println(" total k : " + best.sumK());
+	            metrics.lap("portfolio");
 	        	break;
         }
         
-        cnf.applyOrder();
-         
-        return cnf;
+        return result(ordering);
+    }
+
+    /**
+     * Orders the formula shrunk by a Preprocessor with the given mode, and
+     * expands its order into the order of this formula
+     */
+    private OrderingResult orderPreprocessed(ORDERING ordering, int rounds) {
+        Preprocessor pre = new Preprocessor(this, PreSubsume, PrePropagate, PrePure);
+        OrderedCNF reduced = pre.shrink();
+        if(!quiet) System.out.println(pre.summary());
+        metrics.lap("preprocess");
+
+        reduced.shrunk = true;
+        reduced.quiet = quiet;
+        reduced.metrics = metrics;
+        OrderingResult shrunk = reduced.order(ordering, rounds);
+        System.arraycopy(pre.expand(shrunk.order), 0, order, 0, order.length);
+        projectOrder();
+        int sumK = countK(graph(), false);
+        if(!quiet) System.out.println(" total k of the original formula : " + sumK);
+        metrics.lap("expand");
+        return result(ordering);
+    }
+
+    /**
+     * Orders each of the given components of this formula with the given
+     * mode, largest first on a thread pool, and puts their orders one after
+     * another. kClause of every clause is the one it has in its component.
+     */
+    private OrderingResult orderComponents(ORDERING ordering, int rounds, Components parts) {
+        int n = parts.count;
+        Integer[] bySize = new Integer[n];
+        int largest = 0;
+        for (int i = 0; i < n; i++) {
+            bySize[i] = i;
+            if (parts.clauses(i) > parts.clauses(largest)) largest = i;
+        }
+        Arrays.sort(bySize, (a, b) -> Integer.compare(parts.clauses(b), parts.clauses(a)));
+        if(!quiet) System.out.println("Components: " + n + ", largest with " + parts.clauses(largest)
+                + " clauses and " + parts.variables(largest) + " variables");
+
+        List<Callable<OrderingResult>> tasks = new ArrayList<>();
+        for (int i : bySize) {
+            tasks.add(() -> {
+                OrderedCNF part = parts.part(i);
+                part.split = true;
+                part.shrunk = true;
+                part.quiet = true;
+                return part.order(ordering, rounds);
+            });
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+                Math.min(n, Runtime.getRuntime().availableProcessors())));
+        int[][] orders = new int[n][];
+        try {
+            List<Future<OrderingResult>> results = pool.invokeAll(tasks);
+            for (int j = 0; j < n; j++) {
+                OrderingResult part = results.get(j).get();
+                orders[bySize[j]] = part.order;
+                metrics.add(part.metrics);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Ordering components interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Ordering a component failed", e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        metrics.lap("components");
+
+        System.arraycopy(parts.concatenate(orders), 0, order, 0, order.length);
+        return result(ordering);
+    }
+
+    /**
+     * Returns the current order as the result of ordering with the given
+     * mode, and starts new metrics
+     */
+    private OrderingResult result(ORDERING ordering) {
+        applyOrder();
+        projectOrder();
+        int sumK = countK(graph(), false);
+        int[][] k = new int[clauses+1][];
+        for (int i = 0; i <= clauses; i++) {
+            k[i] = kClause[i].clone();
+        }
+        OrderingResult result = new OrderingResult(ordering, order.clone(), k, sumK, metrics);
+        metrics = new OrderingMetrics();
+        return result;
     }
     
     /**
@@ -610,6 +716,159 @@ public class OrderedCNF {
     	return order;
     }
     
+    /**
+     * The K mode from the current clause and variable orders: barycentre
+     * rounds, k-merge and clause shifting, without printing anything.
+     * @return evaluator of the final order
+     */
+    private KEvaluator orderK(IncidenceGraph graph, int rounds){
+    	updatePositions();
+    	barycentreRounds(graph, rounds);
+    	searchK(graph, false);
+    	KEvaluator eval = new KEvaluator(this, graph);
+    	shiftClauses(eval, BaryleftShiftingRounds);
+    	projectOrder();
+    	return eval;
+    }
+    
+    /**
+     * Runs orderK from the given number of starts in parallel and takes the
+     * order with the lowest max k, ties broken by the lowest sum of k and then
+     * by the first start. Start 0 is the current clause and variable orders,
+     * start i > 0 shuffles both with seed i, so results are reproducible.
+     * Every start works on its own copy of this formula.
+     * @return evaluator of the order taken, which is now the order of this formula
+     */
+    KEvaluator portfolio(IncidenceGraph graph, int rounds, int starts){
+    	OrderedCNF[] copies = new OrderedCNF[starts];
+    	List<Callable<KEvaluator>> tasks = new ArrayList<>();
+    	for(int i = 0; i < starts; i++){
+    		final int seed = i;
+    		final OrderedCNF copy = new OrderedCNF(this);
+    		copies[i] = copy;
+    		tasks.add(() -> {
+    			copy.metrics.restart();
+    			if(seed > 0){
+    				Random rnd = new Random(seed);
+    				shuffleOrder(copy.clauseOrder, rnd);
+    				shuffleOrder(copy.varOrder, rnd);
+    			}
+    			KEvaluator eval = copy.orderK(graph, rounds);
+    			copy.metrics.lap("start");
+    			return eval;
+    		});
+    	}
+    	
+    	ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+    			Math.min(starts, Runtime.getRuntime().availableProcessors())));
+    	OrderedCNF best = null;
+    	KEvaluator bestEval = null;
+    	try{
+    		List<Future<KEvaluator>> results = pool.invokeAll(tasks);
+    		for(int i = 0; i < starts; i++){
+    			KEvaluator eval = results.get(i).get();
+    			if(bestEval == null || eval.maxK() < bestEval.maxK()
+    					|| (eval.maxK() == bestEval.maxK() && eval.sumK() < bestEval.sumK())){
+    				best = copies[i];
+    				bestEval = eval;
+    			}
+    		}
+    	}
+    	catch(InterruptedException e){
+    		Thread.currentThread().interrupt();
+    		throw new IllegalStateException("Portfolio interrupted", e);
+    	}
+    	catch(ExecutionException e){
+    		throw new IllegalStateException("Portfolio start failed", e.getCause());
+    	}
+    	finally{
+    		pool.shutdown();
+    	}
+    	for(OrderedCNF copy : copies){
+    		metrics.add(copy.metrics);
+    	}
+    	
+    	//Take over the order and positions of the best start.
+    	order = best.order;
+    	clauseOrder = best.clauseOrder;
+    	varOrder = best.varOrder;
+    	clauseOrderPosition = best.clauseOrderPosition;
+    	varOrderPosition = best.varOrderPosition;
+    	clausePositionInTotalOrdering = best.clausePositionInTotalOrdering;
+    	varPositionInTotalOrdering = best.varPositionInTotalOrdering;
+    	kClause = best.kClause;
+    	return bestEval;
+    }
+    
+    /**
+     * Shifts every clause towards the side holding most of its k, as
+     * shiftClause and shiftClauseRight do, but evaluates each move with the
+     * given evaluator and keeps it only if it does not raise max k. Moves that
+     * keep max k are allowed to change the sum of k, as they often make room
+     * for later moves that lower max k. Clauses are visited in their current
+     * order, for at most the given number of rounds or until a round keeps
+     * no move.
+     * @param eval Evaluator set up for the current order
+     * @return number of moves kept
+     */
+    public int shiftClauses(KEvaluator eval, int rounds){
+    	int kept = 0;
+    	int[] clauseSequence = new int[clauses];
+    	boolean moved = true;
+    	
+    	for(int r = 0; r < rounds && moved; r++){
+    		moved = false;
+    		int n = 0;
+    		for(int i = 1; i < order.length; i++){
+    			if(order[i] > 0) clauseSequence[n++] = order[i];
+    		}
+    		
+    		for(int c = 0; c < n; c++){
+    			int from = clausePositionInTotalOrdering[clauseSequence[c]];
+    			int to = shiftTarget(from);
+    			if(to == from) continue;
+    			
+    			metrics.shiftMoves++;
+    			int maxK = eval.maxK();
+    			eval.move(from, to);
+    			if(eval.maxK() <= maxK){
+    				kept++;
+    				moved = true;
+    			}
+    			else{
+    				eval.move(to, from); //Reject, move back
+    			}
+    		}
+    	}
+    	metrics.shiftMovesKept += kept;
+    	return kept;
+    }
+    
+    /**
+     * Returns the position shiftClause (if kLeft is the larger) or
+     * shiftClauseRight (if kRight is the larger) would move the clause at
+     * the given position to
+     */
+    private int shiftTarget(int clausePosition){
+    	int l_length = kClause[order[clausePosition]][0];
+    	int r_length = kClause[order[clausePosition]][1];
+    	int pos = clausePosition;
+    	
+    	if(l_length > r_length){
+    		int length = (l_length - r_length) /2;
+    		for(int i = 0; i < length && pos > 1; pos--){
+    			if(order[pos -1] < 0) i++;
+    		}
+    	}
+    	else if(l_length < r_length){
+    		int length = (r_length - l_length) /2;
+    		for(int i = 0; i < length && pos < clauses + variables; pos++){
+    			if(order[pos +1] < 0) i++;
+    		}
+    	}
+    	return pos;
+    }
+    
     /** 
      * Constructs a new OrderedCNF instance with given number of variables and
      * clauses. Order is NOT set and will cause error if not assigned and
@@ -619,7 +878,7 @@ public class OrderedCNF {
         this.variables = variables;
         this.clauses = clauses;
         this.kClause = new int[clauses+1][2];
-        this.literals = new BitSet[(variables+1)*2];            
+        this.literals = new IncidenceGraph(variables, clauses);
         this.order = new int[clauses+variables+1];
         this.clauseOrderPosition = new int[clauses+1];
         
@@ -631,10 +890,34 @@ public class OrderedCNF {
         this.cOrder = new int[clauses+1];
         this.vOrder = new int[variables+1];
         this.isNonEmpty = new boolean[clauses+1]; 
+        this.inputVarOrder = new int[variables+1];
+    }
 
-        for (int i = 0; i < literals.length; i++) {
-            literals[i] = new BitSet(clauses+1);
+    /**
+     * Constructs a copy of the given formula, sharing its literals but with
+     * its own order, position arrays and kClause, so the copy can be
+     * reordered on another thread
+     */
+    private OrderedCNF(OrderedCNF cnf) {
+        this.variables = cnf.variables;
+        this.clauses = cnf.clauses;
+        this.literals = cnf.literals;
+        this.isNonEmpty = cnf.isNonEmpty;
+        this.inputVarOrder = cnf.inputVarOrder;
+        this.inputVars = cnf.inputVars;
+        this.kClause = new int[clauses+1][];
+        for (int i = 0; i <= clauses; i++) {
+            kClause[i] = cnf.kClause[i].clone();
         }
+        this.order = cnf.order.clone();
+        this.clauseOrderPosition = cnf.clauseOrderPosition.clone();
+        this.clausePositionInTotalOrdering = cnf.clausePositionInTotalOrdering.clone();
+        this.varPositionInTotalOrdering = cnf.varPositionInTotalOrdering.clone();
+        this.varOrderPosition = cnf.varOrderPosition.clone();
+        this.clauseOrder = cnf.clauseOrder.clone();
+        this.varOrder = cnf.varOrder.clone();
+        this.cOrder = cnf.cOrder.clone();
+        this.vOrder = cnf.vOrder.clone();
     }
 
     /** 
@@ -652,16 +935,38 @@ public class OrderedCNF {
      * Generates the table <code>clausesAtCut</code> based on the current ordering 
      */
     public void applyOrder() {
-        this.clausesAtCut = new BitSet[order.length];
-
-        clausesAtCut[0] = new BitSet(clauses+1);
-        for (int i = 1; i < order.length; i++) {
-            clausesAtCut[i] = (BitSet) clausesAtCut[i-1].clone();
-            if (order[i] > 0) // index i is a clause
-                clausesAtCut[i].set(order[i]);
-        }
+        this.clausesAtCut = new CutSets(order, clauses);
     }
 
+    /**
+     * Sets the clause order to the order of the input, and the variable order
+     * to the order in which the variables first occur in the input, followed
+     * by variables that do not occur
+     */
+    private void inputOrder() {
+    	for(int i = 1; i <= clauses; i++){
+    		clauseOrder[i] = i;
+    	}
+    	int unused = inputVars;
+    	for(int var = 1; var <= variables; var++){
+    		int pos = inputVarOrder[var];
+    		varOrder[pos > 0 ? pos : ++unused] = var;
+    	}
+    	updatePositions();
+    }
+    
+    /**
+     * Extracts the clause and variable orders from the given order lines
+     */
+    private void extractLinearOrders() {
+    	if(varOrderLine == null || claOrderLine == null){
+    		throw new IllegalArgumentException("No \"" + ORDER_VAR_STRING + "\" and \""
+    				+ ORDER_CLA_STRING + "\" lines given");
+    	}
+    	extractClauseOrder(claOrderLine);
+    	extractVarOrder(varOrderLine);
+    }
+    
     /**
      * Extracts order from line of the form "c ORDER:  v1 c18 c2 cv4 ... " 
      */ 
@@ -687,6 +992,10 @@ public class OrderedCNF {
     	String[] tokens = s.split(" ");
     	int orderInd = 1;
     	for (int i = 1; orderInd <= clauses; i++) {
+    		if (i == tokens.length) {
+    			throw new IllegalArgumentException("The \"" + ORDER_CLA_STRING.trim() + "\" line orders "
+    					+ (orderInd - 1) + " of " + clauses + " clauses");
+    		}
             String token = tokens[i];
             if (token.length() < 1) continue;
             if (token.charAt(0) == 'c') {
@@ -702,12 +1011,12 @@ public class OrderedCNF {
     private void extractVarOrder(String s) {
     	//Store positions of variables
     	String[] tokens = s.split(" ");
-    	if(tokens.length < variables){
-    		System.out.println("Too few variables.");
-    		System.exit(0);
-    	}
     	int orderInd = 1;
     	for (int i = 1; orderInd <= variables; i++) {
+    		if (i == tokens.length) {
+    			throw new IllegalArgumentException("The \"" + ORDER_VAR_STRING.trim() + "\" line orders "
+    					+ (orderInd - 1) + " of " + variables + " variables");
+    		}
             String token = tokens[i];
             if (token.length() < 1) continue;
             if (token.charAt(0) == 'v') {
@@ -733,14 +1042,109 @@ public class OrderedCNF {
     	}
     }
 
+    /**
+     * Rebuilds the clause and variable orders, their position arrays and the
+     * positions in the total ordering from <code>order</code>, in one pass
+     */
+    private void projectOrder() {
+    	int claInd = 1;
+    	int varInd = 1;
+    	for(int i = 1; i < order.length; i++){
+    		if(order[i] < 0){
+    			int var = -order[i];
+    			varOrder[varInd] = var;
+    			varOrderPosition[var] = varInd++;
+    			varPositionInTotalOrdering[var] = i;
+    		}
+    		else{
+    			int clause = order[i];
+    			clauseOrder[claInd] = clause;
+    			clauseOrderPosition[clause] = claInd++;
+    			clausePositionInTotalOrdering[clause] = i;
+    		}
+    	}
+    }
+
     /**
      * Puts the described literal (variable 'var' either positive or negative,
      * depending on 'sign') into the given clause 'clause' 
      */
     public void put(int clause, int var, boolean sign) {
-        int literal = (sign ? 2*var : 2*var + 1);
-        literals[literal].set(clause);
+        literals.add(clause, var, sign);
         isNonEmpty[clause] = true;
+        if (inputVarOrder[var] == 0) {
+            inputVarOrder[var] = ++inputVars;
+        }
+    }
+
+    /**
+     * Puts the first <code>clauses</code> clauses of the given chunks, in
+     * order, as the clauses of this formula. Each chunk gets its own range of
+     * clause numbers and literals from the sizes of the chunks before it, and
+     * the chunks fill their ranges in parallel on the given pool.
+     */
+    private void putChunks(ParallelParser.Chunk[] chunks, ExecutorService pool) throws IOException {
+        int n = chunks.length;
+        int[] firstClause = new int[n + 1]; // number of the first clause of each chunk, less one
+        int[] firstLiteral = new int[n + 1];
+        int[] used = new int[n];            // clauses used from each chunk
+        for (int c = 0; c < n; c++) {
+            ParallelParser.Chunk chunk = chunks[c];
+            used[c] = Math.min(chunk.clauses, clauses - firstClause[c]);
+            if (used[c] < clauses - firstClause[c] && chunk.error != null) {
+                throw chunk.error;
+            }
+            int length = 0;
+            for (int i = 0; i < used[c]; i++) {
+                length += chunk.lengths[i];
+            }
+            firstClause[c+1] = firstClause[c] + used[c];
+            firstLiteral[c+1] = firstLiteral[c] + length;
+        }
+        if (firstClause[n] < clauses) {
+            throw new IOException("Expected " + clauses + " clauses, found " + firstClause[n]);
+        }
+
+        int base = literals.reserve(firstLiteral[n]);
+        ParallelParser.run(pool, n, c -> {
+            ParallelParser.Chunk chunk = chunks[c];
+            int index = base + firstLiteral[c];
+            int j = 0;
+            for (int i = 0; i < used[c]; i++) {
+                int clause = firstClause[c] + i + 1;
+                int length = chunk.lengths[i];
+                if (length > 0) isNonEmpty[clause] = true;
+                for (int end = j + length; j < end; j++) {
+                    int value = chunk.values[j];
+                    literals.set(index++, clause, Math.abs(value), value > 0);
+                }
+            }
+        });
+
+        // Variables occurring only in unused clauses are left out
+        for (int c = 0; c < n; c++) {
+            ParallelParser.Chunk chunk = chunks[c];
+            if (used[c] < chunk.clauses) {
+                chunk.firstVarCount = 0;
+                for (int j = 0; j < firstLiteral[c+1] - firstLiteral[c]; j++) {
+                    int var = Math.abs(chunk.values[j]);
+                    if (inputVarOrder[var] == 0) inputVarOrder[var] = ++inputVars;
+                }
+            }
+            for (int i = 0; i < chunk.firstVarCount; i++) {
+                int var = chunk.firstVars[i];
+                if (inputVarOrder[var] == 0) inputVarOrder[var] = ++inputVars;
+            }
+        }
+    }
+
+    /**
+     * Returns the incidence graph of this formula, holding every literal put
+     * into it
+     */
+    IncidenceGraph graph() {
+        if (!literals.isBuilt()) literals.build();
+        return literals;
     }
 
         
@@ -750,41 +1154,97 @@ public class OrderedCNF {
      * boolean is set to true
      */
     public void output(boolean printOrder) {
-        if (printOrder) {
-            StringBuilder sb = new StringBuilder(order.length*10);
-            StringBuilder sbVar = new StringBuilder(order.length*10);
-            StringBuilder sbCla = new StringBuilder(order.length*10);
-            
-            for (int pos = 1; pos < order.length; pos++) {
-                if (order[pos] > 0){
-                	sb.append(" c" + order[pos]);
-                	sbCla.append(" c" + order[pos]);
-                }
-                else{
-                	sb.append(" v" + (-order[pos]));
-                	sbVar.append(" v" + (-order[pos]));
-                }
-            }
+        try {
+            DimacsWriter writer = new DimacsWriter(Channels.newChannel(System.out));
+            write(writer, printOrder);
+            writer.flush();
+            System.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
 
-            System.out.println("c ----------------");  
-            System.out.println(ORDER_STRING + sb);
-            //System.out.println(ORDER_CLA_STRING + sbCla);
-            //System.out.println(ORDER_VAR_STRING + sbVar);
-            System.out.println("c ----------------"); 
+    /**
+     * Writes this cnf-instance to the file at the given path, in the same way
+     * as <code>output(printOrder)</code>
+     */
+    public void output(String path, boolean printOrder) throws IOException {
+        DimacsWriter writer = new DimacsWriter(path);
+        try {
+            write(writer, printOrder);
+        } finally {
+            writer.close();
         }
-        System.out.println("p cnf " + variables + " " + clauses);
-        for (int clause = 1; clause <= clauses; clause++) {
-            StringBuilder sb = new StringBuilder("");
-            for (int var = 1; var <= variables; var++) {
-                if (literals[2*var].get(clause))
-                    sb.append(var + " ");
-                else if (literals[2*var+1].get(clause))
-                    sb.append("-" + var + " ");
+    }
+
+    /**
+     * Writes the order, with kClause if 'withK' is set, to the file at the
+     * given path in the binary format of <code>OrderFile</code>
+     */
+    public void writeOrderFile(String path, boolean withK) throws IOException {
+        OrderFile.write(path, variables, clauses, order, withK ? kClause : null);
+    }
+
+    /**
+     * Reads the order from the binary file at the given path (see
+     * <code>OrderFile</code>) into order and the position arrays. kClause is
+     * read too if the file has it, and otherwise computed. The file is
+     * decoded into new arrays first, so the order is unchanged if it cannot
+     * be read.
+     */
+    public void readOrderFile(String path) throws IOException {
+        int[] read = new int[order.length];
+        int[][] readK = new int[clauses+1][2];
+        boolean hasK = OrderFile.read(path, variables, clauses, read, readK);
+        System.arraycopy(read, 0, order, 0, order.length);
+        projectOrder();
+        if (hasK) {
+            for (int i = 1; i <= clauses; i++) {
+                kClause[i][0] = readK[i][0];
+                kClause[i][1] = readK[i][1];
             }
-            System.out.println(sb + "0");
+        } else {
+            countK(graph(), false);
         }
-        
-    };
+    }
+
+    /**
+     * Takes the given order, which must hold every clause and variable
+     * exactly once (see <code>OrderVerifier.check</code>), and computes
+     * kClause for it
+     * @return The sum of k over all clauses
+     */
+    int useOrder(int[] given) {
+        System.arraycopy(given, 0, order, 0, order.length);
+        projectOrder();
+        return countK(graph(), false);
+    }
+
+    /**
+     * Merges the given variable order (of -v, as in <code>order</code>) and
+     * clause order into order, as DOUBLE merges its order lines
+     * @return order
+     * @throws IllegalArgumentException if mergeOrder cannot merge them, as the
+     * two orders are not an interval ordering (they must each hold every
+     * variable or clause once, see <code>OrderVerifier.check</code>)
+     */
+    int[] mergeLinearOrders(int[] vars, int[] cla) {
+        for (int i = 1; i <= variables; i++) {
+            varOrder[i] = -vars[i];
+        }
+        System.arraycopy(cla, 1, clauseOrder, 1, clauses);
+        updatePositions();
+        Arrays.fill(order, 0);
+        mergeOrder(graph());
+        return order;
+    }
+
+    void write(DimacsWriter writer, boolean printOrder) throws IOException {
+        if (printOrder) {
+            writer.writeOrder(order);
+        }
+        writer.writeFormula(graph());
+    }
 
     /** 
      * A greedy heuristic for finding an ordering of the variables and 
@@ -795,82 +1255,177 @@ public class OrderedCNF {
      * e_i is connected to at most as many elements in total as e_j 
      */
     private void greedyOrder(){
-        Element[] greedyOrder = new Element[clauses + variables + 1];
-        Element[] clauseElements = new Element[clauses + 1];
-
-        // Initializing
-        for (int i = 1; i <= clauses; i++) {
-            clauseElements[i] = new Element();
-            clauseElements[i].representation = i; // representation of clause
-            greedyOrder[i] = clauseElements[i];
-        } 
+        IncidenceGraph graph = graph();
+        GreedyQueue queue = new GreedyQueue(clauses + variables);
 
+        // Initializing. Element i is clause i, element clauses+i is variable i
         for (int i = 1; i <= variables; i++) {
-            Element e = new Element();
-            e.representation = -i;  // representation of variable
-            greedyOrder[clauses + i] = e;
-            for (int lit = i*2; lit <= i*2+1; lit++ ) {
-                BitSet bs = literals[lit];
-                int c = bs.nextSetBit(0);
-                
-                while (c >= 0) {
-                    
-                    Element cla = clauseElements[c];
-                    cla.degree ++;
-                    e.degree ++;
-                    cla.adjacentTo.add(e);
-                    e.adjacentTo.add(cla);
-                    c = bs.nextSetBit(c+1); // finding next clause containing lit
-               } 
+            for (int j = graph.varOffsets[i]; j < graph.varOffsets[i+1]; j++) {
+                if (repeatedInVar(graph, i, j)) continue;
+                queue.degree[graph.varClauses[j]]++;
+                queue.degree[clauses + i]++;
             }
         }
+        queue.fill();
 
         // Rearranging order greedily
         for (int i = 1; i < order.length; i++) {
-        
-            int best = i;
-            
-            for (int j = i; j < order.length; j++) {
-                if (greedyOrder[j].compareTo(greedyOrder[best]) < 0) {
-                    best = j;
+            int best = queue.poll();
+
+            // neighbours of element chosen in order position i now have 1
+            // higher LDegree
+            if (best <= clauses) {
+                order[i] = best; // representation of clause
+                for (int j = graph.claOffsets[best]; j < graph.claOffsets[best+1]; j++) {
+                    if (repeatedInClause(graph, best, j)) continue;
+                    queue.increaseLDegree(clauses + graph.claVars[j]);
+                }
+            } else {
+                int var = best - clauses;
+                order[i] = -var; // representation of variable
+                for (int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++) {
+                    if (repeatedInVar(graph, var, j)) continue;
+                    queue.increaseLDegree(graph.varClauses[j]);
                 }
             }
-         
-            for (Element adj: greedyOrder[best].adjacentTo) {
-                adj.LDegree++; // neighbours of element chosen in order
-                               // position i now have 1 higher LDegree 
-            }
-            
-            /* updating the order according to choice made by greedy heuristic,
-               and updating greedyOrder so that all unchosen elements are in 
-               position i+1 or higher. */
-            order[i] = greedyOrder[best].representation; 
-            greedyOrder[best] = greedyOrder[i]; 
         }
     }
 
-    /** Class used for GreedyOrder-method */
-    private class Element{
-        int representation = 0;
-        int LDegree = 0;
-        int degree = 0;
-        ArrayList<Element> adjacentTo = new ArrayList<Element>();
-        
-        int compareTo(Element e){
-            if (LDegree == e.LDegree) {
-                return degree - e.degree;
-            } else return e.LDegree - LDegree;
+    /**
+     * Whether the literal at index j among the clauses of var occurs earlier
+     * in the same clause with the same sign. A literal occurring more than
+     * once in a clause counts once.
+     */
+    private static boolean repeatedInVar(IncidenceGraph graph, int var, int j) {
+        for (int k = j-1; k >= graph.varOffsets[var] && graph.varClauses[k] == graph.varClauses[j]; k--) {
+            if (graph.varSigns[k] == graph.varSigns[j]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the literal at index j among the variables of clause occurs
+     * earlier in the clause with the same sign
+     */
+    private static boolean repeatedInClause(IncidenceGraph graph, int clause, int j) {
+        for (int k = j-1; k >= graph.claOffsets[clause] && graph.claVars[k] == graph.claVars[j]; k--) {
+            if (graph.claSigns[k] == graph.claSigns[j]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Priority queue used for GreedyOrder-method, an indexed binary heap of
+     * the elements not yet in the order. The next element has the highest
+     * LDegree, then the lowest degree, then the lowest slot. Slots reproduce
+     * the tie-breaking of picking the first best element in an array of the
+     * remaining elements, where the chosen element is replaced by the one in
+     * the first slot: elements start in slot = element, and when an element
+     * is polled the element in the lowest remaining slot takes its slot.
+     */
+    private static class GreedyQueue{
+        final int[] degree;
+        final int[] LDegree;
+        private final int[] slot;     // slot of each element
+        private final int[] inSlot;   // element in each slot
+        private final int[] heap;     // elements, heap[0] is the next
+        private final int[] heapPos;  // position of each element in heap
+        private int size = 0;
+        private int nextSlot = 1;     // lowest slot of a remaining element
+
+        GreedyQueue(int elements){
+            degree = new int[elements + 1];
+            LDegree = new int[elements + 1];
+            slot = new int[elements + 1];
+            inSlot = new int[elements + 1];
+            heap = new int[elements];
+            heapPos = new int[elements + 1];
+        }
+
+        /** Adds all elements, once their degrees are set */
+        void fill(){
+            for (int e = 1; e < slot.length; e++) {
+                slot[e] = e;
+                inSlot[e] = e;
+                heap[size] = e;
+                heapPos[e] = size++;
+            }
+            for (int p = size/2 - 1; p >= 0; p--) {
+                siftDown(p);
+            }
+        }
+
+        /** Removes and returns the next element */
+        int poll(){
+            int best = heap[0];
+            heapPos[best] = -1;
+            size--;
+            if (size > 0) {
+                heap[0] = heap[size];
+                heapPos[heap[0]] = 0;
+                siftDown(0);
+            }
+
+            // The element in the first slot takes the slot of best
+            int first = inSlot[nextSlot];
+            if (first != best) {
+                slot[first] = slot[best];
+                inSlot[slot[best]] = first;
+                siftDown(heapPos[first]);
+            }
+            nextSlot++;
+            return best;
+        }
+
+        void increaseLDegree(int e){
+            LDegree[e]++;
+            if (heapPos[e] >= 0) {
+                siftUp(heapPos[e]);
+            }
+        }
+
+        /** Whether element a comes before element b */
+        private boolean before(int a, int b){
+            if (LDegree[a] != LDegree[b]) return LDegree[a] > LDegree[b];
+            if (degree[a] != degree[b]) return degree[a] < degree[b];
+            return slot[a] < slot[b];
+        }
+
+        private void siftUp(int p){
+            int e = heap[p];
+            while (p > 0) {
+                int parent = (p - 1) / 2;
+                if (!before(e, heap[parent])) break;
+                heap[p] = heap[parent];
+                heapPos[heap[p]] = p;
+                p = parent;
+            }
+            heap[p] = e;
+            heapPos[e] = p;
+        }
+
+        private void siftDown(int p){
+            int e = heap[p];
+            while (2*p + 1 < size) {
+                int child = 2*p + 1;
+                if (child + 1 < size && before(heap[child + 1], heap[child])) child++;
+                if (!before(heap[child], e)) break;
+                heap[p] = heap[child];
+                heapPos[heap[p]] = p;
+                p = child;
+            }
+            heap[p] = e;
+            heapPos[e] = p;
         }
     }
     
-    //TODO Implement verifier
-    //TODO Simple preprocessing, removing clauses with a variable occuring neg
-    // and pos
     /** 
      * Algorithm for merging two linear orders of variables and clauses
      * into an interval ordering. It selects elements (variables and clauses) greedily in 
+     * @throws IllegalArgumentException if the clause order runs out before a
+     * variable can be placed, as the two orders are not an interval ordering
      */
-    private void mergeOrder(ArrayList<ArrayList<Integer>> graph){
+    private void mergeOrder(IncidenceGraph graph){
     	//Build ordering
     	int adjecentClauseCount = 0;
     	BitSet adjecentClauses = new BitSet(clauses +1);
@@ -880,12 +1435,13 @@ public class OrderedCNF {
     	//Place all variables in the ordering.
     	for (int i = 1; i <= variables; i++) {
     		//Next variable to merge
-    		int var = varOrderPosition[i];
+    		int var = varOrder[i];
     		int matched = 0;
     		
     		if(adjecentClauseCount > 0){
     			//Count adjecent clauses
-    			for(Integer j : graph.get(var)){
+    			for(int n = graph.varOffsets[var]; n < graph.varOffsets[var+1]; n++){
+    				int j = graph.varClauses[n];
     				if(adjecentClauses.get(j)){
     					matched++;
     				}
@@ -893,14 +1449,18 @@ public class OrderedCNF {
     			
     			//Skip clauses until we find legal position for var.
     			while(matched != adjecentClauseCount){
-    				int clause = clauseOrderPosition[currentClause++];
+    				if(currentClause > clauses){
+    					throw new IllegalArgumentException("the variable and clause orders are not an"
+    							+ " interval ordering, no position is left for variable " + var);
+    				}
+    				int clause = clauseOrder[currentClause++];
     				order[orderInd++] = clause;
     				//TODO FIX MATCHED ERROR? Probably fixed
     				if(adjecentClauses.get(clause)){
     					adjecentClauseCount--;
     					adjecentClauses.clear(clause);
     					//Check if we skip adjecent clause
-    					if(literals[2*var].get(clause) || literals[2*var +1].get(clause)){
+    					if(literals.contains(clause, var)){
     						matched--;
     					}
     				}
@@ -908,7 +1468,8 @@ public class OrderedCNF {
     			
     			//Add variable to the order and adjecent clauses
     			order[orderInd++] = -var;
-    			for(Integer j : graph.get(var)){
+    			for(int n = graph.varOffsets[var]; n < graph.varOffsets[var+1]; n++){
+    				int j = graph.varClauses[n];
     				if(!adjecentClauses.get(j) && (clauseOrderPosition[j] >= currentClause)){
     					adjecentClauseCount++;
     					adjecentClauses.set(j);
@@ -919,7 +1480,8 @@ public class OrderedCNF {
     			//Add variable to the order
     			order[orderInd++] = -var;
     			//Add adjecent clauses
-    			for(Integer j : graph.get(var)){
+    			for(int n = graph.varOffsets[var]; n < graph.varOffsets[var+1]; n++){
+    				int j = graph.varClauses[n];
     				if(clauseOrderPosition[j] >= currentClause)
     				{
     					adjecentClauseCount++;
@@ -931,174 +1493,24 @@ public class OrderedCNF {
     	
     	//Add rest of clauses
     	for (int i = currentClause; i <= clauses; i++) {
-			order[orderInd++] = clauseOrderPosition[currentClause++];
+			order[orderInd++] = clauseOrder[currentClause++];
     	}
     	
-    	//Verify proper interval ordering.
-    	for(int i = 1; i <= orderInd; i++){
-    		
+    	//Verify that every clause and variable was placed exactly once.
+    	String problem = OrderVerifier.check(order, variables, clauses);
+    	if(problem != null){
+    		throw new IllegalStateException("Merged order is broken: " + problem);
     	}
     }
     
     //Implement k interval merge ordering algorithm.
-    //TODO Simple preprocessing, removing clauses with a variable occuring neg
-    // and pos
     /** 
      * Algorithm for merging two linear orders of variables and clauses
      * into an interval ordering. It selects elements (variables and clauses) greedily in 
      */
-    private void kMergeOrder(ArrayList<ArrayList<Integer>> varGraph, 
-    		ArrayList<ArrayList<Integer>> claGraph, boolean givenClauseOrder){
-
-    	int k = 0; //Starting value of k.
-    	boolean success = false;
-    	
-    	//Loop until k value is found.
-    	while(!success){
-        	int[] varAdjCla = new int[variables+1]; //Array for holding adj. cla. lower than cut
-        	int adjClaSize = 0; //Size of varAdjCla
-        	int orderInd = variables + clauses; //Start with the highest position
-        	int currentVarPos = variables + 1; //Positioned after last variable
-        	boolean clauseFailed = false;
-        	int clause;
-	    	//Place all clauses in the ordering.
-        	ClauseLoop:
-	    	for (int i = clauses; i >= 1; i--) {
-	    		//Next clause to merge
-	    		clause = clauseOrder[i];
-
-	    		int matched = 0;
-	    		int lowestOrderedVarPos = -1;
-	    		int lowVarCount = 0;
-	    		//look at all adj. vars for clause. do stuff.
-	    		for(int j = 0; j < claGraph.get(clause).size(); j++){
-	    			int var = claGraph.get(clause).get(j); // Do not store this when done.
-	    			if(adjClaSize > 0){
-	    				if(varAdjCla[var] > 0){
-	    					if(literals[2*var].get(clause) || literals[2*var +1].get(clause)){
-	    						matched++;
-	    					}
-	    				}
-	    			}
-	    			
-	    			//Keep track of vars positioned before current pos
-	    			if(varOrderPosition[var] < currentVarPos){
-	    				lowVarCount++;
-	    				if(lowestOrderedVarPos == -1){
-	    					lowestOrderedVarPos = varOrderPosition[var];
-	    				}
-
-	    				if(varOrderPosition[var] < lowestOrderedVarPos){
-	    					lowestOrderedVarPos = varOrderPosition[var];
-	    				}
-	    			}
-	    		}
-	    		
-	    		//Vars needed for clause in higher pos. than cut.
-	    		int kRight = adjClaSize - matched;
-	    		int kLeft = 0;
-	    		if(lowestOrderedVarPos < currentVarPos && lowestOrderedVarPos > 0){
-	    			kLeft = currentVarPos - lowestOrderedVarPos - lowVarCount;
-	    		}
-	    		
-	    		//If we found possible position, continue with next clause.
-	    		if((kRight + kLeft) <= k){
-	    			order[orderInd--] = clause;
-	    			
-	    			//Remove vars req in kRight by the positioned clause.
-	    			for (int v : claGraph.get(clause)){
-	    				if(varOrderPosition[v] > currentVarPos){
-	    					if (varAdjCla[v] > 1){
-	    						varAdjCla[v]--;
-	    					}
-	    					else if (varAdjCla[v] == 1){
-		    						adjClaSize--;
-		    						varAdjCla[v]--;
-	    					}
-	    				}
-	    			}
-	    			System.out.println("kRight:" + kRight);
-	    			System.out.println("kLeft:" + kLeft);
-	    			//Next iteration
-	    			continue ClauseLoop;
-	    		}
-
-	    		//Try moving the clause left to find a valid position.
-	    		while(kRight <= k){
-	    			//Add next variable to the order.
-	    			int var = varOrder[--currentVarPos];
-	    			order[orderInd--] = -var;
-	    			
-	    			//Update kRight
-	    			for (int cla : varGraph.get(var)){
-	    				if(clauseOrderPosition[cla] < clauseOrderPosition[clause]){
-	    					//Only count new clauses.
-	    					if(varAdjCla[var] == 0){
-	    						adjClaSize++;
-	    					}
-	    					varAdjCla[var]++;
-	    				}
-	    			}
-	    			
-	    			//If skipped var is adjacent to clauses before this, we must add var to clause.
-	    			if( varAdjCla[var] > 0  && !(literals[2*var].get(clause) || 
-	    					literals[2*var +1].get(clause))){
-	    				kRight++;
-	    			}
-	    			
-	    			//Update left.
-	    			if(!(literals[2*var].get(clause) || 
-	    					literals[2*var +1].get(clause)) && kLeft > 0){
-	    				kLeft--;
-	    			}
-	    			
-		    		//If we found possible position, continue with next clause.
-		    		if((kRight + kLeft) <= k){
-		    			order[orderInd--] = clause;
-		    			
-		    			//Remove vars req in kRight by the positioned clause.
-		    			for (int v : claGraph.get(clause)){
-		    				if(varOrderPosition[v] > currentVarPos){
-		    					if (varAdjCla[v] > 1){
-		    						varAdjCla[v]--;
-		    					}
-		    					else if (varAdjCla[v] == 1){
-			    						adjClaSize--;
-			    						varAdjCla[v]--;
-		    					}
-		    				}
-		    			}
-		    			
-		    			System.out.println("kRight:" + kRight);
-		    			System.out.println("kLeft:" + kLeft);
-		    			//Next iteration in outer loop.
-		    			continue ClauseLoop;
-		    		}
-	    		}
-	    		
-	    		//No position found for current clause. Increase k.
-	    		clauseFailed = true;
-	    		break;
-	    	}
-	    	
-	    	//Increment k value.
-	    	if(clauseFailed){
-	    		k++;
-	    	}
-	    	else{
-	    		//Add rest of vars to the ordering... stuff stuff..
-	    		success = true;
-	    		while(currentVarPos > 0){
-	    			order[orderInd--] = -varOrder[--currentVarPos];
-	    		}
-	    	}
-	    	/*
-	    	if(k>max_k){
-	    		System.out.println("Aborting alg. to large k = " + k);
-	    		System.exit(0);
-	    	}*/
-	    	
-	    }
+    private void kMergeOrder(IncidenceGraph graph, boolean givenClauseOrder){
+    	int k = searchK(graph, !quiet);
+    	if(quiet) return;
     	
 	    	System.out.println(" k = " + k );
 	    	System.out.println("Number of variables = " + variables  );
@@ -1115,60 +1527,72 @@ public class OrderedCNF {
     /**
      * Apply barycenter algorithm.
      * If lockVars = true, permute clauses. Else permute variables.
+     * @return sum of the distances the permuted elements moved
      */
-    private void barycentre(boolean lockVars, ArrayList<ArrayList<Integer>> graph){
-    	double[] newOrdering;
-    	int[] newOrdering_pos;
-    	//Set size of new ordering.
+    private long barycentre(boolean lockVars, IncidenceGraph graph){
+    	if(bary == null || bary.graph != graph){
+    		bary = new Barycentre(graph);
+    	}
+    	bary.variant = BaryVariant;
     	if(!lockVars){
-    		newOrdering = new double[variables+1];
-    		newOrdering_pos = new int[variables+1];
-    		//position stuff
-    		for(int i = 1; i <= variables;i++){
-    			//Find all positions
-    			int tot = 0;
-    			
-    			for(int j: graph.get(i)){
-    				tot += clauseOrderPosition[j];
-    			}
-    			newOrdering_pos[i] = i;
-    			newOrdering[i] = (double)tot/graph.get(i).size();
-    		}
+    		return bary.orderVariables(varOrder, clauseOrderPosition);
     	}
+    	//Order clauses
     	else{
-    		//Do the opposite........
-    		newOrdering = new double[clauses +1];
-    		newOrdering_pos = new int[clauses +1];
-    		//position stuff
-    		for(int i = 1; i <= clauses;i++){
-    			//Find all positions
-    			int tot = 0;
-    			
-    			for(int j: graph.get(i)){
-    				tot += varOrderPosition[j];
-    			}
-    			newOrdering_pos[i] = i;
-    			newOrdering[i] = (double) tot/graph.get(i).size();
-    		}
+    		return bary.orderClauses(clauseOrder, varOrderPosition);
     	}
+    }
     
-
-    	if(!lockVars){
-    		//mergeSort(newOrdering,true);
-    		quicksort(newOrdering, 1, variables, true,newOrdering_pos);
-    		for(int i = 1; i <= variables;i++){
-    			varOrder[i] = newOrdering_pos[i];
-    		}
+    /**
+     * Alternates barycentre on clauses and variables for at most the given
+     * number of rounds. Stops once a round moves nothing after both orders
+     * have been permuted (the orders are then fixed), or once two rounds in a
+     * row move less than BaryMinDisplacement positions per element. Every
+     * BaryCheckInterval rounds, if set, the cut width of the clause order is
+     * estimated and the orders with the lowest estimate are kept, so variants
+     * that oscillate end on their best orders.
+     * @return number of rounds run
+     */
+    private int barycentreRounds(IncidenceGraph graph, int rounds){
+    	int[] bestClauseOrder = null;
+    	int[] bestVarOrder = null;
+    	int bestWidth = Integer.MAX_VALUE;
+    	if(BaryCheckInterval > 0){
+    		bary = (bary == null || bary.graph != graph) ? new Barycentre(graph) : bary;
+    		bestWidth = bary.cutWidth(clauseOrderPosition);
+    		bestClauseOrder = clauseOrder.clone();
+    		bestVarOrder = varOrder.clone();
     	}
-    	//Order clauses
-    	else{
-    		//mergeSort(newOrdering,false);
-    		quicksort(newOrdering, 1, clauses, false,newOrdering_pos);
-    		for(int i = 1; i <= clauses;i++){
-    			clauseOrder[i] = newOrdering_pos[i];
+    	
+    	int r = 1;
+    	int slowRounds = 0;
+    	for(;r<=rounds;r++){
+    		//Odd rounds permute clauses, even rounds variables.
+    		int n = (r%2 == 0) ? variables : clauses;
+    		long moved = barycentre(r%2 != 0, graph);
+    		updatePositions();
+    		
+    		if(BaryCheckInterval > 0 && (r%BaryCheckInterval == 0 || r == rounds)){
+    			int width = bary.cutWidth(clauseOrderPosition);
+    			if(width < bestWidth){
+    				bestWidth = width;
+    				System.arraycopy(clauseOrder, 0, bestClauseOrder, 0, clauseOrder.length);
+    				System.arraycopy(varOrder, 0, bestVarOrder, 0, varOrder.length);
+    			}
     		}
+    		
+    		if(moved == 0 && r > 1) break;
+    		slowRounds = (moved < BaryMinDisplacement * n) ? slowRounds + 1 : 0;
+    		if(slowRounds >= 2) break;
     	}
     	
+    	if(BaryCheckInterval > 0 && bary.cutWidth(clauseOrderPosition) > bestWidth){
+    		System.arraycopy(bestClauseOrder, 0, clauseOrder, 0, clauseOrder.length);
+    		System.arraycopy(bestVarOrder, 0, varOrder, 0, varOrder.length);
+    		updatePositions();
+    	}
+    	metrics.barycentreRounds += Math.min(r, rounds);
+    	return Math.min(r, rounds);
     }
     
     @SuppressWarnings("rawtypes")
@@ -1272,68 +1696,23 @@ public class OrderedCNF {
     
     
     
-    /**
-     * 
-     * @param dataToBeSorted Auxillirary data used to sort elements
-     * @param left
-     * @param right
-     */
-    public void quicksort(double[] dataToBeSorted,int left, int right,boolean orderVars,int[] newOrdering_pos){
-    	int index = partition(dataToBeSorted, left, right,orderVars,newOrdering_pos);
-    	if(left < index -1){
-    		quicksort(dataToBeSorted,left, index -1,orderVars,newOrdering_pos);
-    	}
-    	if(index < right) {
-    		quicksort(dataToBeSorted,index, right,orderVars,newOrdering_pos);
-    	}
-    }
-    
-    int partition (double[] arr, int left, int right, boolean orderVars,int[] newOrdering_pos){
-    	double pivot = arr[(right + left)/2];
-    	
-    	while(left <= right){
-    		//Find element on the left that should be on right
-    		while(arr[left] < pivot) left++;
-    		//Find element on right that should be on left
-    		while(arr[right] > pivot) right--;
-    		
-    		//Swap elements, and move left and right indicies
-    		if(left <= right){
-                double tmp = arr[left];
-                arr[left] = arr[right];
-                arr[right] = tmp;
-                
-                int tmp2 = newOrdering_pos[left];
-                newOrdering_pos[left] = newOrdering_pos[right];
-                newOrdering_pos[right] = tmp2;
-
-                left++;
-                right--;
-
-    		}
-    	}
-    	
-    	return left;
-    }
-    
     /** 
      * Just move all clauses to its average position, i.e. avg. 
      * var pos in its total ordering
      * 
      */
     //TODO: Maybe change this? based on ordering in varorder? any reason?
-    public void simpleMerge(ArrayList<ArrayList<Integer>> varGraph, 
-    		ArrayList<ArrayList<Integer>> claGraph){
+    public void simpleMerge(IncidenceGraph graph){
     	
 		for(int i = 1 ;i<order.length ; i++){
 			if(order[i] > 0){
 				int clause = order[i];
 				//calculate new position for order[i]
 				int newPos = 0;
-    			for(int j: claGraph.get(clause)){
-    				newPos += varPositionInTotalOrdering[j];
+    			for(int j = graph.claOffsets[clause]; j < graph.claOffsets[clause+1]; j++){
+    				newPos += varPositionInTotalOrdering[graph.claVars[j]];
     			}
-    			newPos = newPos/claGraph.get(clause).size();
+    			newPos = newPos/graph.clauseDegree(clause);
 				
 				order = shiftClauseToNewPosition(order,i,newPos);
 			}
@@ -1343,15 +1722,54 @@ public class OrderedCNF {
     }
     
     /** 
-     * Algorithm for merging two linear orders of variables and clauses
-     * into an interval ordering. It selects elements (variables and clauses) greedily in 
+     * Computes kLeft and kRight of every clause in the current order and
+     * stores them in <code>kClause</code>. kLeft of the clause at position i
+     * is the number of variables between its leftmost variable and i, minus
+     * its own variables there. kRight is the number of variables positioned
+     * after i, not in the clause, which occur in some clause before i.
+     * 
+     * Single sweep over the order: a variable at position p whose first
+     * clause is at position f counts towards kRight of every clause strictly
+     * between f and p, which difference counts over positions give for all
+     * clauses at once. Runs in O(clauses + variables + literals).
+     * @return sum of all k
      */
-    public int countK(ArrayList<ArrayList<Integer>> varGraph, 
-    		ArrayList<ArrayList<Integer>> claGraph,boolean print){
+    public int countK(IncidenceGraph graph,boolean print){
+    	metrics.countKCalls++;
     	int totalKsum = 0;
     	int totalLeftSum = 0;
     	int totalRightSum = 0;
     	int maxK = 0;
+    	
+    	int[] varsBefore = new int[order.length + 1]; //#variables at positions < i
+    	int[] varPos = new int[variables + 1]; //position of each variable in order
+    	for(int i = 1; i < order.length; i++){
+    		varsBefore[i+1] = varsBefore[i];
+    		if(order[i] < 0){
+    			varsBefore[i+1]++;
+    			varPos[-order[i]] = i;
+    		}
+    	}
+    	
+    	//Position of the first clause of each variable, and the number of
+    	//variables positioned after i with their first clause before i.
+    	int[] firstClause = new int[variables + 1];
+    	int[] active = new int[order.length + 1];
+    	for(int var = 1; var <= variables; var++){
+    		firstClause[var] = Integer.MAX_VALUE;
+    		for(int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++){
+    			int pos = clausePositionInTotalOrdering[graph.varClauses[j]];
+    			if(pos < firstClause[var]) firstClause[var] = pos;
+    		}
+    		if(firstClause[var] < varPos[var] - 1){
+    			active[firstClause[var] + 1]++;
+    			active[varPos[var]]--;
+    		}
+    	}
+    	for(int i = 1; i < order.length; i++){
+    		active[i] += active[i-1];
+    	}
+    	
     	//Find clause
     	for(int i = 1; i< order.length; i++){ 
     		
@@ -1359,74 +1777,35 @@ public class OrderedCNF {
     			int kLeft = 0, kRight = 0;
     			//Count k for clause order[i]
     			int clause = order[i];
-    			int lowestOrderedVar = -1;
+    			int lowestOrderedPos = -1;
     			int lowVarCount = 0;
-    			//Count partial left K
-	    		for(int j = 0; j < claGraph.get(clause).size(); j++){
-	    			int var = claGraph.get(clause).get(j); // Do not store this when done.
+    			kRight = active[i];
+	    		for(int j = graph.claOffsets[clause]; j < graph.claOffsets[clause+1]; j++){
+	    			int var = graph.claVars[j];
 
 	    			//Keep track of vars positioned before current pos
 	    			if(varPositionInTotalOrdering[var] < i){
 	    				lowVarCount++;
-	    				if(lowestOrderedVar == -1){
-	    					lowestOrderedVar = var;
-	    				}
-
-	    				if(varPositionInTotalOrdering[var] < varPositionInTotalOrdering[lowestOrderedVar]){
-	    					lowestOrderedVar = var;
+	    				if(lowestOrderedPos == -1 || varPositionInTotalOrdering[var] < lowestOrderedPos){
+	    					lowestOrderedPos = varPositionInTotalOrdering[var];
 	    				}
 	    			}
+	    			
+	    			//Own variables to the right do not count, each only once
+	    			boolean repeated = (j > graph.claOffsets[clause] && graph.claVars[j-1] == var);
+	    			if(!repeated && varPos[var] > i && firstClause[var] < i){
+	    				kRight--;
+	    			}
 	    		}
 	    		
+	    		//Count partial left K
 	    		if(lowVarCount > 0){
-	    			for(int j = varPositionInTotalOrdering[lowestOrderedVar]; j< i;j++)
-	    			{
-	    				if(order[j] < 0){
-	    					kLeft++;
-	    				}
-	    			}	
-	    			kLeft = kLeft - lowVarCount;
+	    			kLeft = varsBefore[i] - varsBefore[lowestOrderedPos] - lowVarCount;
 	    		}
 	    		
-	    		//System.out.println("For clause : " + clause + " Kleft = " + kLeft );
-	    	
-    			//Count partial right K
-	    		ClauseLoop:
-	        	for(int j = i+1; j < order.length; j++){ 
-	        		
-	        		int kRightTemp = 0;
-	        		if(order[j] < 0){
-	        			
-	        			int var = Math.abs(order[j]);
-	        			
-	        			//Check if clause contains var
-	    	    		for(int k = 0; k < claGraph.get(clause).size(); k++){
-	    	    			int tempvar = claGraph.get(clause).get(k); // Do not store this when done.
-	    	    			if (var == tempvar ){
-	    	    				continue ClauseLoop;
-	    	    			}
-	    	    		}
-	        			
-	        			//Count partial left K
-	    	    		for(int k = 0; k < varGraph.get(var).size(); k++){
-	    	    			int cla = varGraph.get(var).get(k); // Do not store this when done.
-	    	    			
-	    	    			if(clausePositionInTotalOrdering[cla] < i){
-	    	    				kRightTemp++;
-	    	    			}
-	    	    		}
-	        		}
-	        		if(kRightTemp > 0){
-	        			kRight++;
-	        		}
-	        		
-	        	}
-	    		
 	        	if (( kRight + kLeft) > maxK ){
 	        		maxK = kRight + kLeft;
 	        	}
-	    		//System.out.println("For clause : " + clause + " Kright= " + kRight);
-	    		//System.out.println("For clause : " + clause + " SUM " + (kRight + kLeft));
 	    		totalKsum += kRight + kLeft;
 	    		totalLeftSum+=kLeft;
 	    		totalRightSum+=kRight;
@@ -1448,162 +1827,164 @@ public class OrderedCNF {
      * Algorithm for merging two linear orders of variables and clauses
      * into an interval ordering. It selects elements (variables and clauses) greedily in 
      */
-    private void kMergeOrderExt(ArrayList<ArrayList<Integer>> varGraph, 
-    		ArrayList<ArrayList<Integer>> claGraph, boolean givenClauseOrder){
-
-    	int k = 0; //Starting value of k.
-    	boolean success = false;
-    	
-    	//Loop until k value is found.
-    	while(!success){
-        	int[] varAdjCla = new int[variables+1]; //Array for holding adj. cla. lower than cut
-        	int adjClaSize = 0; //Size of varAdjCla
-        	int orderInd = variables + clauses; //Start with the highest position
-        	int currentVarPos = variables + 1; //Positioned after last variable
-        	boolean clauseFailed = false;
-        	int clause;
-	    	//Place all clauses in the ordering.
-        	ClauseLoop:
-	    	for (int i = clauses; i >= 1; i--) {
-	    		//Next clause to merge
-	    		clause = clauseOrder[i];
-
-	    		int matched = 0;
-	    		int lowestOrderedVarPos = -1;
-	    		int lowVarCount = 0;
-	    		//look at all adj. vars for clause. do stuff.
-	    		for(int j = 0; j < claGraph.get(clause).size(); j++){
-	    			int var = claGraph.get(clause).get(j); // Do not store this when done.
-	    			if(adjClaSize > 0){
-	    				if(varAdjCla[var] > 0){
-	    					if(literals[2*var].get(clause) || literals[2*var +1].get(clause)){
-	    						matched++;
-	    					}
-	    				}
-	    			}
-	    			
-	    			//Keep track of vars positioned before current pos
-	    			if(varOrderPosition[var] < currentVarPos){
-	    				lowVarCount++;
-	    				if(lowestOrderedVarPos == -1){
-	    					lowestOrderedVarPos = varOrderPosition[var];
-	    				}
-
-	    				if(varOrderPosition[var] < lowestOrderedVarPos){
-	    					lowestOrderedVarPos = varOrderPosition[var];
-	    				}
-	    			}
-	    		}
-	    		
-	    		//Vars needed for clause in higher pos. than cut.
-	    		int kRight = adjClaSize - matched;
-	    		int kLeft = 0;
-	    		if(lowestOrderedVarPos < currentVarPos && lowestOrderedVarPos > 0){
-	    			kLeft = currentVarPos - lowestOrderedVarPos - lowVarCount;
-	    		}
-	    		
-	    		//If we found possible position, continue with next clause.
-	    		if((kRight + kLeft) <= k){
-	    			order[orderInd--] = clause;
-	    			//System.out.println("k for clause: " + clause + ": " + k);
-	    			//Remove vars req in kRight by the positioned clause.
-	    			for (int v : claGraph.get(clause)){
-	    				if(varOrderPosition[v] > currentVarPos){
-	    					if (varAdjCla[v] > 1){
-	    						varAdjCla[v]--;
-	    					}
-	    					else if (varAdjCla[v] == 1){
-		    						adjClaSize--;
-		    						varAdjCla[v]--;
-	    					}
-	    				}
-	    			}
-	    			//System.out.println("kRight:" + kRight);
-	    			kClause[clause][0] = kLeft;
-	    			kClause[clause][1] = kRight;
-	    			//System.out.println("kLeft:" + kLeft);
-	    			//Next iteration
-	    			continue ClauseLoop;
-	    		}
-
-	    		//Try moving the clause left to find a valid position.
-	    		while(kRight <= k){
-	    			//Add next variable to the order.
-	    			int var = varOrder[--currentVarPos];
-	    			order[orderInd--] = -var;
-	    			
-	    			//Update kRight
-	    			for (int cla : varGraph.get(var)){
-	    				if(clauseOrderPosition[cla] < clauseOrderPosition[clause]){
-	    					//Only count new clauses.
-	    					if(varAdjCla[var] == 0){
-	    						adjClaSize++;
-	    					}
-	    					varAdjCla[var]++;
-	    				}
-	    			}
-	    			
-	    			//If skipped var is adjacent to clauses before this, we must add var to clause.
-	    			if( varAdjCla[var] > 0  && !(literals[2*var].get(clause) || 
-	    					literals[2*var +1].get(clause))){
-	    				kRight++;
-	    			}
-	    			
-	    			
-	    			
-	    			//Update left.
-	    			if(!(literals[2*var].get(clause) || 
-	    					literals[2*var +1].get(clause)) && kLeft > 0){
-	    				kLeft--;
-	    			}
-	    			
-		    		//If we found possible position, continue with next clause.
-		    		if((kRight + kLeft) <= k){
-		    			order[orderInd--] = clause;
-		    			//System.out.println("k for clause: " + clause + ": " + k);
-		    			//Remove vars req in kRight by the positioned clause.
-		    			for (int v : claGraph.get(clause)){
-		    				if(varOrderPosition[v] > currentVarPos){
-		    					if (varAdjCla[v] > 1){
-		    						varAdjCla[v]--;
-		    					}
-		    					else if (varAdjCla[v] == 1){
-			    						adjClaSize--;
-			    						varAdjCla[v]--;
-		    					}
-		    				}
-		    			}
-		    			kClause[clause][0] = kLeft;
-		    			kClause[clause][1] = kRight;
-		    			//System.out.println("kRight:" + kRight);
-		    			//System.out.println("kLeft:" + kLeft);
-		    			//Next iteration in outer loop.
-		    			continue ClauseLoop;
-		    		}
-	    		}
-	    		
-	    		//No position found for current clause. Increase k.
-	    		clauseFailed = true;
-	    		break;
-	    	}
-	    	
-	    	//Increment k value.
-	    	if(clauseFailed){
-	    		k++;
-	    	}
-	    	else{
-	    		//Add rest of vars to the ordering... stuff stuff..
-	    		success = true;
-	    		while(currentVarPos > 0){
-	    			order[orderInd--] = -varOrder[--currentVarPos];
-	    		}
-	    	}
-	    }
+    private void kMergeOrderExt(IncidenceGraph graph, boolean givenClauseOrder){
+    	int k = searchK(graph, false);
     	//System.out.println("kClause SUM : " + countkClause());
-    	System.out.println(" k = " + k );
+    	if(!quiet) System.out.println(" k = " + k );
     	//System.out.println("#variables = " + variables + "#clauses = " + clauses  );
     }
     
+    /**
+     * Finds the lowest k for which kMerge succeeds, leaving the order and
+     * kClause of the merge with that k. k = 0, 1, 2, ... are tried in turn,
+     * as the greedy merge is not strictly monotone in k: it can fail for some
+     * k and succeed for a lower one, so a search skipping values of k could
+     * return a larger k than this scan. kMerge always succeeds with
+     * k = variables, as kLeft and kRight count disjoint sets of variables.
+     * The buffer of kMerge is reused by all attempts, and a failing attempt
+     * stops at the first clause that does not fit.
+     *
+     * Galloping or bisecting over k, or starting from the k of an earlier
+     * search, would skip values of k and so is not done. Scanning down from
+     * an earlier k would be exact only down to a lower bound on the k of
+     * every merge, and there is none cheaper than the attempts themselves:
+     * placing variables further left lowers kLeft of a clause but can raise
+     * kRight of the ones before it.
+     * @param print Print kRight and kLeft of every clause placed by the final merge
+     * @return lowest k
+     */
+    private int searchK(IncidenceGraph graph, boolean print){
+    	metrics.kSearches++;
+    	int[] varAdjCla = new int[variables+1];
+    	int k = 0;
+    	while(k < variables && !kMerge(graph, k, varAdjCla, false)){
+    		k++;
+    	}
+    	if(k == variables || print){
+    		kMerge(graph, k, varAdjCla, print);
+    	}
+    	return k;
+    }
+    
+    /**
+     * Tries to merge the clause and variable orders with every clause having
+     * kLeft + kRight at most k, placing clauses from the back of the clause
+     * order and skipping variables until each fits. Fills order and kClause
+     * if it succeeds.
+     * @param varAdjCla Buffer of size variables+1, cleared here
+     * @param print Print kRight and kLeft of every clause placed
+     * @return whether all clauses were placed
+     */
+    private boolean kMerge(IncidenceGraph graph, int k, int[] varAdjCla, boolean print){
+    	metrics.kMerges++;
+    	Arrays.fill(varAdjCla, 0); //Array for holding adj. cla. lower than cut
+    	int adjClaSize = 0; //Size of varAdjCla
+    	int orderInd = variables + clauses; //Start with the highest position
+    	int currentVarPos = variables + 1; //Positioned after last variable
+    	int clause;
+    	//Place all clauses in the ordering.
+    	for (int i = clauses; i >= 1; i--) {
+    		//Next clause to merge
+    		clause = clauseOrder[i];
+
+    		int matched = 0;
+    		int lowestOrderedVarPos = -1;
+    		int lowVarCount = 0;
+    		//look at all adj. vars for clause. do stuff.
+    		for(int j = graph.claOffsets[clause]; j < graph.claOffsets[clause+1]; j++){
+    			int var = graph.claVars[j];
+    			if(adjClaSize > 0){
+    				if(varAdjCla[var] > 0){
+    					if(literals.contains(clause, var)){
+    						matched++;
+    					}
+    				}
+    			}
+    			
+    			//Keep track of vars positioned before current pos
+    			if(varOrderPosition[var] < currentVarPos){
+    				lowVarCount++;
+    				if(lowestOrderedVarPos == -1){
+    					lowestOrderedVarPos = varOrderPosition[var];
+    				}
+
+    				if(varOrderPosition[var] < lowestOrderedVarPos){
+    					lowestOrderedVarPos = varOrderPosition[var];
+    				}
+    			}
+    		}
+    		
+    		//Vars needed for clause in higher pos. than cut.
+    		int kRight = adjClaSize - matched;
+    		int kLeft = 0;
+    		if(lowestOrderedVarPos < currentVarPos && lowestOrderedVarPos > 0){
+    			kLeft = currentVarPos - lowestOrderedVarPos - lowVarCount;
+    		}
+    		
+    		//Try moving the clause left until we find a valid position.
+    		while((kRight + kLeft) > k){
+    			if(kRight > k){
+    				//No position found for current clause.
+    				return false;
+    			}
+    			
+    			//Add next variable to the order.
+    			int var = varOrder[--currentVarPos];
+    			order[orderInd--] = -var;
+    			
+    			//Update kRight
+    			for (int n = graph.varOffsets[var]; n < graph.varOffsets[var+1]; n++){
+    				int cla = graph.varClauses[n];
+    				if(clauseOrderPosition[cla] < clauseOrderPosition[clause]){
+    					//Only count new clauses.
+    					if(varAdjCla[var] == 0){
+    						adjClaSize++;
+    					}
+    					varAdjCla[var]++;
+    				}
+    			}
+    			
+    			//If skipped var is adjacent to clauses before this, we must add var to clause.
+    			if( varAdjCla[var] > 0  && !literals.contains(clause, var)){
+    				kRight++;
+    			}
+    			
+    			//Update left.
+    			if(!literals.contains(clause, var) && kLeft > 0){
+    				kLeft--;
+    			}
+    		}
+    		
+    		//Found a position, place the clause.
+    		order[orderInd--] = clause;
+    		//Remove vars req in kRight by the positioned clause.
+    		for (int n = graph.claOffsets[clause]; n < graph.claOffsets[clause+1]; n++){
+    			int v = graph.claVars[n];
+    			if(varOrderPosition[v] > currentVarPos){
+    				if (varAdjCla[v] > 1){
+    					varAdjCla[v]--;
+    				}
+    				else if (varAdjCla[v] == 1){
+    					adjClaSize--;
+    					varAdjCla[v]--;
+    				}
+    			}
+    		}
+    		if(print){
+    			System.out.println("kRight:" + kRight);
+    			System.out.println("kLeft:" + kLeft);
+    		}
+    		kClause[clause][0] = kLeft;
+    		kClause[clause][1] = kRight;
+    	}
+    	
+    	//Add rest of vars to the ordering... stuff stuff..
+    	while(currentVarPos > 0){
+    		order[orderInd--] = -varOrder[--currentVarPos];
+    	}
+    	return true;
+    }
+    
     /**
      * Calculate the total Right and Left k for every clause. 
      * @return sum of all k
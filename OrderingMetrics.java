@@ -0,0 +1,164 @@
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ * Wall time and allocated bytes of each phase of ordering a formula, and
+ * counters of the work done: k-merge attempts, barycentre rounds, clause
+ * shifts and countK calls. A phase runs from the previous call of
+ * <code>lap</code> (or the creation of the metrics) to the next.
+ *
+ * Every phase is also committed as a JFR event, "orderedcnf.Phase", when a
+ * flight recording has it enabled (java -XX:StartFlightRecording ...), and
+ * costs nothing otherwise. <code>toJson()</code> gives all of it as one line.
+ *
+ * Allocation is counted for the thread calling <code>lap</code>; work done on
+ * other threads is added with <code>add</code>.
+ */
+public class OrderingMetrics {
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+    private final Map<String, Long> phaseBytes = new LinkedHashMap<>();
+    private long start = System.nanoTime();
+    private long startBytes = allocatedBytes();
+    private long otherBytes = 0; // allocated on other threads since the last lap
+    private PhaseEvent event = begin();
+
+    /** Merges tried while searching for the lowest k */
+    public int kMerges;
+    /** Searches for the lowest k, each made of one or more merges */
+    public int kSearches;
+    public int barycentreRounds;
+    /** Clause moves tried by shiftClauses, and those kept */
+    public int shiftMoves, shiftMovesKept;
+    public int countKCalls;
+
+    /**
+     * Ends the current phase, recording it under the given name (adding to
+     * the phase if it ran before), and starts the next
+     */
+    public void lap(String phase) {
+        long now = System.nanoTime();
+        long bytes = allocatedBytes();
+        long allocated = (bytes < 0) ? -1 : bytes - startBytes + otherBytes;
+        phaseNanos.merge(phase, now - start, Long::sum);
+        phaseBytes.merge(phase, allocated, (a, b) -> (a < 0 || b < 0) ? -1 : a + b);
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.phase = phase;
+            event.allocated = allocated;
+            event.commit();
+        }
+        start = now;
+        startBytes = bytes;
+        otherBytes = 0;
+        event = begin();
+    }
+
+    /**
+     * Starts the next phase now, leaving out the time and allocation since
+     * the last lap (when nothing was being ordered)
+     */
+    public void restart() {
+        start = System.nanoTime();
+        startBytes = allocatedBytes();
+        otherBytes = 0;
+        event = begin();
+    }
+
+    /**
+     * Adds the counters and the allocation of the given metrics, from work
+     * done on other threads, to these. The allocation is counted in the next
+     * phase.
+     */
+    public void add(OrderingMetrics other) {
+        kMerges += other.kMerges;
+        kSearches += other.kSearches;
+        barycentreRounds += other.barycentreRounds;
+        shiftMoves += other.shiftMoves;
+        shiftMovesKept += other.shiftMovesKept;
+        countKCalls += other.countKCalls;
+        for (long bytes : other.phaseBytes.values()) {
+            if (bytes > 0) otherBytes += bytes;
+        }
+    }
+
+    /** Nanoseconds spent in each phase, in the order the phases first ran */
+    public Map<String, Long> phaseNanos() {
+        return Collections.unmodifiableMap(phaseNanos);
+    }
+
+    /** Bytes allocated in each phase, -1 if the JVM cannot count them */
+    public Map<String, Long> phaseBytes() {
+        return Collections.unmodifiableMap(phaseBytes);
+    }
+
+    /**
+     * Returns all metrics as one line of JSON, e.g.
+     * {"phases":{"kmerge":{"ns":1200,"bytes":4096}},"kMerges":7,...}
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{\"phases\":{");
+        boolean first = true;
+        for (Map.Entry<String, Long> e : phaseNanos.entrySet()) {
+            if (!first) sb.append(',');
+            first = false;
+            sb.append('"').append(e.getKey()).append("\":{\"ns\":").append(e.getValue())
+              .append(",\"bytes\":").append(phaseBytes.get(e.getKey())).append('}');
+        }
+        sb.append("},\"kMerges\":").append(kMerges)
+          .append(",\"kSearches\":").append(kSearches)
+          .append(",\"barycentreRounds\":").append(barycentreRounds)
+          .append(",\"shiftMoves\":").append(shiftMoves)
+          .append(",\"shiftMovesKept\":").append(shiftMovesKept)
+          .append(",\"countKCalls\":").append(countKCalls)
+          .append('}');
+        return sb.toString();
+    }
+
+    private static PhaseEvent begin() {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Bytes allocated so far by the current thread, -1 if not supported
+     */
+    private static long allocatedBytes() {
+        return (THREADS == null) ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled()) {
+                return threads;
+            }
+        }
+        return null;
+    }
+
+    @Name("orderedcnf.Phase")
+    @Label("Ordering Phase")
+    @Category("OrderedCNF")
+    static class PhaseEvent extends Event {
+        @Label("Phase")
+        String phase;
+
+        @Label("Allocated")
+        @DataAmount
+        long allocated;
+    }
+}
@@ -0,0 +1,47 @@
+import java.util.Map;
+
+
+/**
+ * The result of ordering a formula with <code>OrderedCNF.order</code>: the
+ * order, kLeft and kRight of every clause in it, and the time, allocation
+ * and work counters of each phase of the ordering.
+ */
+public class OrderingResult {
+    public final ORDERING ordering;
+    /** The order, as <code>OrderedCNF.order</code> (positions 1..clauses+variables) */
+    public final int[] order;
+    /** kLeft and kRight of each clause, as <code>OrderedCNF.kClause</code> */
+    public final int[][] kClause;
+    public final int maxK;
+    public final int sumK;
+    /** Nanoseconds spent in each phase, in the order the phases ran */
+    public final Map<String, Long> phaseNanos;
+    public final OrderingMetrics metrics;
+
+    OrderingResult(ORDERING ordering, int[] order, int[][] kClause, int sumK,
+            OrderingMetrics metrics) {
+        this.ordering = ordering;
+        this.order = order;
+        this.kClause = kClause;
+        this.sumK = sumK;
+        this.metrics = metrics;
+        this.phaseNanos = metrics.phaseNanos();
+
+        int max = 0;
+        for (int clause = 1; clause < kClause.length; clause++) {
+            max = Math.max(max, kClause[clause][0] + kClause[clause][1]);
+        }
+        this.maxK = max;
+    }
+
+    /**
+     * Returns the total time of all phases, in nanoseconds
+     */
+    public long totalNanos() {
+        long total = 0;
+        for (long nanos : phaseNanos.values()) {
+            total += nanos;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.IntConsumer;
+
+
+/**
+ * Parses the clause section of a DIMACS file in chunks, one per thread. The
+ * section is cut at line ends that also end a clause (a line whose last
+ * token is 0 and that is not a comment), so every chunk holds whole clauses,
+ * even when clauses span several lines. Each chunk is read by its own
+ * DimacsReader through positional reads of the shared file channel, and
+ * keeps its clauses in its own arrays, so the chunks share nothing while
+ * they are parsed. The chunks run on a pool given by the caller, so the
+ * number of threads is the caller's choice.
+ *
+ * Clause numbers follow from the number of clauses in the chunks before, so
+ * they are the same as when the file is read from start to end.
+ */
+public class ParallelParser {
+    /** Smallest part of the clause section worth a thread of its own */
+    static final long MIN_CHUNK = 4 << 20;
+    private static final int SCAN_BUFFER = 1 << 16;
+
+    /**
+     * The clauses of one chunk of the file
+     */
+    static class Chunk {
+        final long start, end;     // bytes [start, end) of the file
+        int clauses = 0;           // number of clauses parsed
+        int[] lengths = new int[1024]; // number of literals of each clause
+        int literals = 0;          // number of literals parsed
+        int[] values = new int[4096];  // the literals of all clauses, in order
+        IOException error;         // the error that stopped parsing, if any
+        int[] firstVars;           // variables in the order they first occur here
+        int firstVarCount;
+
+        Chunk(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /**
+     * Splits the bytes [from, size) of the file into at most n chunks, each
+     * ending at the end of a clause, and parses the chunks on the given pool
+     * @param variables Number of variables, for recording first occurrences
+     */
+    static Chunk[] parse(FileChannel channel, long from, int n, int variables,
+            ExecutorService pool) throws IOException {
+        long size = channel.size();
+        List<Chunk> chunks = new ArrayList<>();
+        long start = from;
+        for (int i = 1; i <= n && start < size; i++) {
+            long end = (i == n) ? size : clauseEnd(channel, from + (size - from) * i / n, size);
+            if (end > start) {
+                chunks.add(new Chunk(start, end));
+                start = end;
+            }
+        }
+        Chunk[] result = chunks.toArray(new Chunk[0]);
+        run(pool, result.length, c -> parse(channel, result[c], variables));
+        return result;
+    }
+
+    /**
+     * Runs task(0) .. task(n-1) on the given pool, and waits for all of them
+     */
+    static void run(ExecutorService pool, int n, IntConsumer task) throws IOException {
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            int c = i;
+            tasks.add(() -> {
+                task.accept(c);
+                return null;
+            });
+        }
+        try {
+            for (Future<Void> done : pool.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while parsing");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Returns the offset just after the first line end, after the line
+     * holding the given offset, that ends a clause, or size if there is none
+     */
+    private static long clauseEnd(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER);
+        long pos = offset;
+        boolean partial = true;   // still in the line holding offset
+        boolean comment = false;  // the line is a comment
+        boolean empty = true;     // no token on the line yet
+        boolean zero = false;     // the last token on the line is "0"
+        int tokenLength = 0;      // length of the current token
+        while (pos < size) {
+            buffer.clear();
+            int n = channel.read(buffer, pos);
+            if (n < 0) break;
+            for (int i = 0; i < n; i++) {
+                byte b = buffer.get(i);
+                if (b == '\n') {
+                    if (!partial && !comment && zero) return pos + i + 1;
+                    partial = false;
+                    comment = false;
+                    empty = true;
+                    zero = false;
+                    tokenLength = 0;
+                } else if (b == ' ' || b == '\t' || b == '\r') {
+                    tokenLength = 0;
+                } else {
+                    if (empty && b == 'c') comment = true;
+                    empty = false;
+                    tokenLength++;
+                    zero = (tokenLength == 1 && b == '0');
+                }
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    /**
+     * Parses all clauses of the chunk, recording the variables in the order
+     * they first occur. A malformed clause stops the chunk and is kept as its
+     * error, as it only matters if the clauses before it are too few.
+     */
+    private static void parse(FileChannel channel, Chunk chunk, int variables) {
+        BitSet seen = new BitSet(variables + 1);
+        int[] firstVars = new int[1024];
+        int firstVarCount = 0;
+        DimacsReader reader = new DimacsReader(range(channel, chunk.start, chunk.end));
+        try {
+            while (true) {
+                int length = reader.nextClause();
+                if (length < 0) break;
+                if (chunk.clauses == chunk.lengths.length) {
+                    chunk.lengths = Arrays.copyOf(chunk.lengths, 2 * chunk.clauses);
+                }
+                if (chunk.literals + length > chunk.values.length) {
+                    chunk.values = Arrays.copyOf(chunk.values,
+                            Math.max(2 * chunk.values.length, chunk.literals + length));
+                }
+                for (int j = 0; j < length; j++) {
+                    int value = reader.clause[j];
+                    chunk.values[chunk.literals++] = value;
+                    int var = Math.abs(value);
+                    if (!seen.get(var)) {
+                        seen.set(var);
+                        if (firstVarCount == firstVars.length) {
+                            firstVars = Arrays.copyOf(firstVars, 2 * firstVarCount);
+                        }
+                        firstVars[firstVarCount++] = var;
+                    }
+                }
+                chunk.lengths[chunk.clauses++] = length;
+            }
+        } catch (IOException e) {
+            chunk.error = e;
+        }
+        chunk.firstVars = firstVars;
+        chunk.firstVarCount = firstVarCount;
+    }
+
+    /**
+     * A channel reading the bytes [start, end) of the given file channel,
+     * with positional reads so several can share the file channel
+     */
+    private static ReadableByteChannel range(FileChannel channel, long start, long end) {
+        return new ReadableByteChannel() {
+            private long pos = start;
+
+            @Override
+            public int read(ByteBuffer dst) throws IOException {
+                if (pos >= end) return -1;
+                int limit = dst.limit();
+                dst.limit(dst.position() + (int) Math.min(dst.remaining(), end - pos));
+                int n = channel.read(dst, pos);
+                dst.limit(limit);
+                if (n > 0) pos += n;
+                return n;
+            }
+
+            @Override
+            public boolean isOpen() {
+                return channel.isOpen();
+            }
+
+            @Override
+            public void close() {
+                // The file channel is closed by its owner
+            }
+        };
+    }
+}
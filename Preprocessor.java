@@ -0,0 +1,490 @@
+import java.util.Arrays;
+
+
+/**
+ * Shrinks a formula before it is ordered, and maps an order of the smaller
+ * formula back to an order of the original one. Always removes repeated
+ * literals, tautological clauses (holding a variable both positive and
+ * negative) and repeated clauses (the same literals in any order, keeping
+ * the first). Optionally also removes clauses subsumed by another, clauses
+ * satisfied by unit propagation (and the false literals of the others), and
+ * clauses holding a pure literal. Variables left in no clause are removed.
+ *
+ * The smaller formula numbers its clauses and variables in the order of the
+ * original, so clauseMap and varMap take its numbers back to the original
+ * ones. In <code>expand</code>, a removed variable is placed just before the
+ * first kept clause it occurred in, and a removed clause just after the last
+ * of its variables, so the order stays about as good for the original.
+ * Unit propagation and pure literals can remove most of a formula, leaving
+ * much of its order to this placement rather than to the heuristics.
+ */
+public class Preprocessor {
+    final OrderedCNF cnf;
+    final boolean subsume;   // remove subsumed clauses
+    final boolean propagate; // propagate unit clauses
+    final boolean pure;      // remove clauses with pure literals
+
+    /** Original number of each clause of the smaller formula, from 1 */
+    int[] clauseMap;
+    /** Original number of each variable of the smaller formula, from 1 */
+    int[] varMap;
+    private int[] newClause; // number in the smaller formula of each original clause, 0 if removed
+    private int[] repeats;   // the earlier clause each repeated clause repeats, 0 for others
+
+    int repeatedLiterals, tautologies, repeatedClauses, subsumed, units, pureLiterals, satisfied;
+
+    // Literals of the clauses, as 2*var for positive and 2*var+1 for negative
+    // literals. Clause c holds lits[start[c]..start[c]+length[c]-1].
+    private int[] lits;
+    private int[] start;
+    private int[] length;
+    private boolean[] live;
+    private int[] count;      // occurrences of each literal in live clauses
+    private int[] occStart;   // clauses of each literal, when first read
+    private int[] occ;
+    private int[] value;      // 1 if true, -1 if false, 0 if unassigned, per variable
+    private int[] unitQueue, pureQueue;
+    private int unitCount, pureCount;
+
+    public Preprocessor(OrderedCNF cnf, boolean subsume, boolean propagate, boolean pure) {
+        this.cnf = cnf;
+        this.subsume = subsume;
+        this.propagate = propagate;
+        this.pure = pure;
+    }
+
+    /**
+     * Returns the smaller formula, with every step enabled applied
+     */
+    public OrderedCNF shrink() {
+        read();
+        removeRepeatedClauses();
+        if (subsume) removeSubsumed();
+        if (propagate || pure) propagate();
+        return build();
+    }
+
+    /**
+     * Reads the clauses of the formula, leaving out repeated literals and
+     * tautological clauses
+     */
+    private void read() {
+        IncidenceGraph graph = cnf.graph();
+        int clauses = cnf.clauses;
+        int variables = cnf.variables;
+        lits = new int[graph.claVars.length];
+        start = new int[clauses + 1];
+        length = new int[clauses + 1];
+        live = new boolean[clauses + 1];
+        count = new int[2 * variables + 2];
+        int[] mark = new int[2 * variables + 2]; // clause the literal was last seen in
+
+        int next = 0;
+        for (int c = 1; c <= clauses; c++) {
+            start[c] = next;
+            live[c] = true;
+            for (int j = graph.claOffsets[c]; j < graph.claOffsets[c+1]; j++) {
+                int lit = 2 * graph.claVars[j] + (graph.claSigns[j] ? 0 : 1);
+                if (mark[lit] == c) {
+                    repeatedLiterals++;
+                    continue;
+                }
+                if (mark[lit ^ 1] == c) live[c] = false;
+                mark[lit] = c;
+                lits[next++] = lit;
+            }
+            length[c] = next - start[c];
+            if (!live[c]) {
+                tautologies++;
+            } else {
+                for (int j = start[c]; j < next; j++) count[lits[j]]++;
+            }
+        }
+
+        // Clauses of each literal
+        occStart = new int[count.length + 1];
+        for (int lit = 0; lit < count.length; lit++) {
+            occStart[lit+1] = occStart[lit] + count[lit];
+        }
+        occ = new int[occStart[count.length]];
+        int[] fill = Arrays.copyOf(occStart, count.length);
+        for (int c = 1; c <= clauses; c++) {
+            if (!live[c]) continue;
+            for (int j = start[c]; j < start[c] + length[c]; j++) {
+                occ[fill[lits[j]]++] = c;
+            }
+        }
+    }
+
+    /**
+     * Removes clauses with the same literals as an earlier clause, found by
+     * sorting the clauses on a hash of their literals that does not depend on
+     * their order
+     */
+    private void removeRepeatedClauses() {
+        int clauses = cnf.clauses;
+        long[] keys = new long[clauses];
+        int n = 0;
+        for (int c = 1; c <= clauses; c++) {
+            if (!live[c]) continue;
+            int hash = length[c];
+            for (int j = start[c]; j < start[c] + length[c]; j++) {
+                hash += mix(lits[j]);
+            }
+            keys[n++] = (long) hash << 32 | c;
+        }
+        Arrays.sort(keys, 0, n);
+
+        repeats = new int[clauses + 1];
+        int[] mark = new int[count.length];
+        for (int i = 0; i < n; i++) {
+            int c = (int) keys[i];
+            if (!live[c]) continue;
+            for (int j = start[c]; j < start[c] + length[c]; j++) mark[lits[j]] = c;
+            // Later clauses with the same hash
+            for (int h = i + 1; h < n && (keys[h] >>> 32) == (keys[i] >>> 32); h++) {
+                int d = (int) keys[h];
+                if (live[d] && length[d] == length[c] && marked(mark, c, d)) {
+                    remove(d);
+                    repeats[d] = c;
+                    repeatedClauses++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Removes clauses holding all literals of a shorter clause. Each clause
+     * is checked against the clauses of its least frequent literal.
+     */
+    private void removeSubsumed() {
+        int clauses = cnf.clauses;
+        long[] bySize = new long[clauses];
+        int n = 0;
+        for (int c = 1; c <= clauses; c++) {
+            if (live[c] && length[c] > 0) bySize[n++] = (long) length[c] << 32 | c;
+        }
+        Arrays.sort(bySize, 0, n);
+
+        int[] mark = new int[count.length];
+        for (int i = 0; i < n; i++) {
+            int c = (int) bySize[i];
+            if (!live[c]) continue;
+            int rarest = lits[start[c]];
+            for (int j = start[c]; j < start[c] + length[c]; j++) {
+                mark[lits[j]] = c;
+                if (count[lits[j]] < count[rarest]) rarest = lits[j];
+            }
+            for (int j = occStart[rarest]; j < occStart[rarest+1]; j++) {
+                int d = occ[j];
+                if (d != c && live[d] && length[d] > length[c] && marked(mark, c, d)) {
+                    remove(d);
+                    subsumed++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether clause d holds every literal of clause c, whose literals are
+     * marked with c
+     */
+    private boolean marked(int[] mark, int c, int d) {
+        int found = 0;
+        for (int j = start[d]; j < start[d] + length[d]; j++) {
+            if (mark[lits[j]] == c) found++;
+        }
+        return found == length[c];
+    }
+
+    /**
+     * Sets the literals of unit clauses, and pure literals, to true until
+     * there are none left, removing the satisfied clauses and the false
+     * literals. A clause whose literals all become false is kept, empty.
+     */
+    private void propagate() {
+        int variables = cnf.variables;
+        value = new int[variables + 1];
+        unitQueue = new int[cnf.clauses + 1];
+        if (propagate) {
+            for (int c = 1; c <= cnf.clauses; c++) {
+                if (live[c] && length[c] == 1) unitQueue[unitCount++] = c;
+            }
+        }
+        if (pure) {
+            pureQueue = new int[3 * variables + 1]; // each variable, and again per literal gone
+            for (int var = variables; var >= 1; var--) pureQueue[pureCount++] = var;
+        }
+
+        while (unitCount > 0 || pureCount > 0) {
+            if (unitCount > 0) {
+                int c = unitQueue[--unitCount];
+                if (!live[c] || length[c] != 1) continue;
+                units++;
+                assign(lits[start[c]]);
+            } else {
+                int var = pureQueue[--pureCount];
+                if (value[var] != 0) continue;
+                int pos = count[2*var];
+                int neg = count[2*var+1];
+                if ((pos > 0) == (neg > 0)) continue;
+                pureLiterals++;
+                assign(pos > 0 ? 2*var : 2*var+1);
+            }
+        }
+    }
+
+    /**
+     * Sets the given literal to true
+     */
+    private void assign(int lit) {
+        value[lit >> 1] = ((lit & 1) == 0) ? 1 : -1;
+        for (int j = occStart[lit]; j < occStart[lit+1]; j++) {
+            int c = occ[j];
+            if (live[c]) {
+                remove(c);
+                satisfied++;
+            }
+        }
+        int not = lit ^ 1;
+        for (int j = occStart[not]; j < occStart[not+1]; j++) {
+            int c = occ[j];
+            if (!live[c]) continue;
+            int end = start[c] + length[c];
+            for (int i = start[c]; i < end; i++) {
+                if (lits[i] == not) {
+                    lits[i] = lits[end-1];
+                    length[c]--;
+                    lost(not);
+                    break;
+                }
+            }
+            if (propagate && length[c] == 1) unitQueue[unitCount++] = c;
+        }
+    }
+
+    private void remove(int c) {
+        live[c] = false;
+        for (int j = start[c]; j < start[c] + length[c]; j++) lost(lits[j]);
+    }
+
+    /**
+     * Counts one occurrence less of the given literal, queueing its variable
+     * if it may have become pure
+     */
+    private void lost(int lit) {
+        count[lit]--;
+        if (pureQueue != null && count[lit] == 0 && count[lit ^ 1] > 0 && value[lit >> 1] == 0) {
+            pureQueue[pureCount++] = lit >> 1;
+        }
+    }
+
+    /**
+     * Builds the smaller formula from the live clauses and the variables
+     * left in them
+     */
+    private OrderedCNF build() {
+        int variables = cnf.variables;
+        int[] newVar = new int[variables + 1];
+        varMap = new int[variables + 1];
+        int keptVars = 0;
+        for (int var = 1; var <= variables; var++) {
+            if (count[2*var] + count[2*var+1] > 0) {
+                newVar[var] = ++keptVars;
+                varMap[keptVars] = var;
+            }
+        }
+        varMap = Arrays.copyOf(varMap, keptVars + 1);
+
+        newClause = new int[cnf.clauses + 1];
+        clauseMap = new int[cnf.clauses + 1];
+        int keptClauses = 0;
+        for (int c = 1; c <= cnf.clauses; c++) {
+            if (live[c]) {
+                newClause[c] = ++keptClauses;
+                clauseMap[keptClauses] = c;
+            }
+        }
+        clauseMap = Arrays.copyOf(clauseMap, keptClauses + 1);
+
+        OrderedCNF reduced = new OrderedCNF(keptVars, keptClauses);
+        for (int clause = 1; clause <= keptClauses; clause++) {
+            int c = clauseMap[clause];
+            for (int j = start[c]; j < start[c] + length[c]; j++) {
+                reduced.put(clause, newVar[lits[j] >> 1], (lits[j] & 1) == 0);
+            }
+        }
+        // Keep the order in which the variables first occur in the input
+        int[] byInput = new int[cnf.inputVars + 1];
+        for (int var = 1; var <= variables; var++) {
+            byInput[cnf.inputVarOrder[var]] = var;
+        }
+        reduced.inputVars = 0;
+        for (int i = 1; i <= cnf.inputVars; i++) {
+            int var = newVar[byInput[i]];
+            if (var > 0) reduced.inputVarOrder[var] = ++reduced.inputVars;
+        }
+        reduced.graph();
+        lits = null;
+        occ = null;
+        return reduced;
+    }
+
+    /**
+     * Returns the order of the original formula made from the given order of
+     * the smaller one. Each removed element goes into the gap before a kept
+     * element (or at the end): a removed variable before the first kept
+     * clause it occurs in, a repeated clause just after the clause it
+     * repeats, and other removed clauses after the last of their variables. Removed variables occurring only in removed clauses are
+     * placed by a breadth-first search from the kept elements, each where its
+     * clause would go given the variables already placed, so chains of
+     * removed clauses stay together.
+     */
+    public int[] expand(int[] reducedOrder) {
+        IncidenceGraph graph = cnf.graph();
+        int clauses = cnf.clauses;
+        int variables = cnf.variables;
+        int n = reducedOrder.length - 1;
+        int[] varPos = new int[variables + 1]; // position of each kept variable
+        int[] gap = new int[variables + 1];    // gap of each removed variable, 0 if not placed
+        int[] seq = new int[variables + 1];    // order in which removed variables were placed
+        int[] queue = new int[variables];
+        int head = 0, tail = 0, placed = 0;
+
+        // Kept variables, and removed variables of kept clauses, in order
+        for (int i = 1; i <= n; i++) {
+            int e = reducedOrder[i];
+            if (e < 0) {
+                varPos[varMap[-e]] = i;
+                queue[tail++] = varMap[-e];
+                continue;
+            }
+            int c = clauseMap[e];
+            for (int j = graph.claOffsets[c]; j < graph.claOffsets[c+1]; j++) {
+                int var = graph.claVars[j];
+                if (varPos[var] == 0 && gap[var] == 0 && !kept(var)) {
+                    gap[var] = i;
+                    seq[var] = placed++;
+                    queue[tail++] = var;
+                }
+            }
+        }
+        for (int next = 1; ; next++) {
+            while (head < tail) {
+                int var = queue[head++];
+                for (int j = graph.varOffsets[var]; j < graph.varOffsets[var+1]; j++) {
+                    int c = graph.varClauses[j];
+                    if (newClause[c] > 0) continue;
+                    int g = clauseGap(graph, c, varPos, gap, n);
+                    for (int k = graph.claOffsets[c]; k < graph.claOffsets[c+1]; k++) {
+                        int v = graph.claVars[k];
+                        if (varPos[v] == 0 && gap[v] == 0) {
+                            gap[v] = g;
+                            seq[v] = placed++;
+                            queue[tail++] = v;
+                        }
+                    }
+                }
+            }
+            // Removed variables out of reach of the kept ones go at the end
+            while (next <= variables && (varPos[next] > 0 || gap[next] > 0)) next++;
+            if (next > variables) break;
+            gap[next] = n + 1;
+            seq[next] = placed++;
+            queue[tail++] = next;
+        }
+
+        // Removed elements by gap, then variables by seq, each clause just
+        // after its last variable in the gap
+        int[] gapStart = new int[n + 3];
+        long[] removed = new long[clauses + variables - n];
+        int[] clauseGap = new int[clauses + 1];
+        for (int var = 1; var <= variables; var++) {
+            if (varPos[var] == 0) gapStart[gap[var] + 1]++;
+        }
+        int[] claPos = new int[clauses + 1];
+        for (int i = 1; i <= n; i++) {
+            if (reducedOrder[i] > 0) claPos[clauseMap[reducedOrder[i]]] = i;
+        }
+        for (int c = 1; c <= clauses; c++) {
+            if (newClause[c] > 0) continue;
+            int twin = repeats[c];
+            clauseGap[c] = (twin > 0 && newClause[twin] > 0) ? claPos[twin] + 1
+                    : clauseGap(graph, c, varPos, gap, n);
+            gapStart[clauseGap[c] + 1]++;
+        }
+        for (int g = 1; g <= n + 2; g++) {
+            gapStart[g] += gapStart[g-1];
+        }
+        int[] fill = Arrays.copyOf(gapStart, n + 2);
+        for (int var = 1; var <= variables; var++) {
+            if (varPos[var] == 0) {
+                removed[fill[gap[var]]++] = (long) (2*seq[var] + 2) << 31 | (clauses + var);
+            }
+        }
+        for (int c = 1; c <= clauses; c++) {
+            if (newClause[c] > 0) continue;
+            int after = -1;
+            int twin = repeats[c];
+            for (int j = graph.claOffsets[c]; j < graph.claOffsets[c+1]; j++) {
+                if (twin > 0 && newClause[twin] > 0) break; // first in the gap
+                int var = graph.claVars[j];
+                if (varPos[var] == 0 && gap[var] == clauseGap[c]) after = Math.max(after, seq[var]);
+            }
+            removed[fill[clauseGap[c]]++] = (long) (2*after + 3) << 31 | c;
+        }
+
+        int[] order = new int[clauses + variables + 1];
+        int pos = 1;
+        for (int g = 1; g <= n + 1; g++) {
+            Arrays.sort(removed, gapStart[g], gapStart[g+1]);
+            for (int j = gapStart[g]; j < gapStart[g+1]; j++) {
+                int e = (int) (removed[j] & Integer.MAX_VALUE);
+                order[pos++] = (e <= clauses) ? e : -(e - clauses);
+            }
+            if (g <= n) {
+                int e = reducedOrder[g];
+                order[pos++] = (e > 0) ? clauseMap[e] : -varMap[-e];
+            }
+        }
+        return order;
+    }
+
+    /**
+     * The gap a removed clause goes into: after the last of its placed
+     * variables, or at the end if none is placed
+     */
+    private static int clauseGap(IncidenceGraph graph, int c, int[] varPos, int[] gap, int n) {
+        int g = 0;
+        for (int j = graph.claOffsets[c]; j < graph.claOffsets[c+1]; j++) {
+            int var = graph.claVars[j];
+            if (varPos[var] > 0) {
+                g = Math.max(g, varPos[var] + 1);
+            } else {
+                g = Math.max(g, gap[var]);
+            }
+        }
+        return (g == 0) ? n + 1 : g;
+    }
+
+    private boolean kept(int var) {
+        return count[2*var] + count[2*var+1] > 0;
+    }
+
+    /**
+     * Describes what was removed
+     */
+    public String summary() {
+        return "Preprocessing: " + cnf.clauses + " -> " + (clauseMap.length - 1) + " clauses, "
+                + cnf.variables + " -> " + (varMap.length - 1) + " variables ("
+                + tautologies + " tautologies, " + repeatedClauses + " repeated clauses, "
+                + repeatedLiterals + " repeated literals, " + subsumed + " subsumed, "
+                + units + " units, " + pureLiterals + " pure literals, "
+                + satisfied + " clauses satisfied)";
+    }
+
+    private static int mix(int lit) {
+        int h = lit * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+}
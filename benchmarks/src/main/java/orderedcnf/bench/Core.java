@@ -0,0 +1,200 @@
+package orderedcnf.bench;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+
+/**
+ * Handles on the methods and fields of OrderedCNF used by the benchmarks.
+ * OrderedCNF is in the default package, which classes in a named package
+ * (as JMH requires) cannot import, and the ordering steps are private, so
+ * they are looked up once here. The handles are static final so the JIT
+ * treats them as constants.
+ */
+final class Core {
+    static final Class<?> CNF;
+    static final Class<?> GRAPH;
+
+    private static final MethodHandle PARSE;
+    private static final MethodHandle GRAPH_OF;
+    private static final MethodHandle INPUT_ORDER;
+    private static final MethodHandle PROJECT_ORDER;
+    private static final MethodHandle UPDATE_POSITIONS;
+    private static final MethodHandle GREEDY_ORDER;
+    private static final MethodHandle BARYCENTRE;
+    private static final MethodHandle K_MERGE;
+    private static final MethodHandle COUNT_K;
+    private static final MethodHandle SHIFT_CLAUSE;
+    private static final MethodHandle SHIFT_CLAUSES;
+    private static final MethodHandle APPLY_ORDER;
+    private static final MethodHandle NEW_EVALUATOR;
+    private static final MethodHandle SET_QUIET;
+    private static final MethodHandle GET_ORDER;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            CNF = Class.forName("OrderedCNF");
+            GRAPH = Class.forName("IncidenceGraph");
+            Class<?> evaluator = Class.forName("KEvaluator");
+            MethodHandles.Lookup cnf = MethodHandles.privateLookupIn(CNF, lookup);
+            MethodHandles.Lookup eval = MethodHandles.privateLookupIn(evaluator, lookup);
+
+            PARSE = cnf.findStatic(CNF, "parse", MethodType.methodType(CNF, String.class));
+            GRAPH_OF = cnf.findVirtual(CNF, "graph", MethodType.methodType(GRAPH));
+            INPUT_ORDER = cnf.findVirtual(CNF, "inputOrder", MethodType.methodType(void.class));
+            PROJECT_ORDER = cnf.findVirtual(CNF, "projectOrder", MethodType.methodType(void.class));
+            UPDATE_POSITIONS = cnf.findVirtual(CNF, "updatePositions",
+                    MethodType.methodType(void.class));
+            GREEDY_ORDER = cnf.findVirtual(CNF, "greedyOrder", MethodType.methodType(void.class));
+            BARYCENTRE = cnf.findVirtual(CNF, "barycentre",
+                    MethodType.methodType(long.class, boolean.class, GRAPH));
+            K_MERGE = cnf.findVirtual(CNF, "kMergeOrderExt",
+                    MethodType.methodType(void.class, GRAPH, boolean.class));
+            COUNT_K = cnf.findVirtual(CNF, "countK",
+                    MethodType.methodType(int.class, GRAPH, boolean.class));
+            SHIFT_CLAUSE = cnf.findVirtual(CNF, "shiftClause",
+                    MethodType.methodType(int[].class, int[].class, int.class));
+            SHIFT_CLAUSES = cnf.findVirtual(CNF, "shiftClauses",
+                    MethodType.methodType(int.class, evaluator, int.class));
+            APPLY_ORDER = cnf.findVirtual(CNF, "applyOrder", MethodType.methodType(void.class));
+            NEW_EVALUATOR = eval.findConstructor(evaluator,
+                    MethodType.methodType(void.class, CNF, GRAPH));
+            SET_QUIET = cnf.findSetter(CNF, "quiet", boolean.class);
+            GET_ORDER = cnf.findGetter(CNF, "order", int[].class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Core() {
+    }
+
+    /**
+     * Parses the formula at the given path, without ordering it, with
+     * printing turned off
+     */
+    static Object parse(String path) {
+        try {
+            Object cnf = PARSE.invoke(path);
+            SET_QUIET.invoke(cnf, true);
+            return cnf;
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static Object graph(Object cnf) {
+        try {
+            return GRAPH_OF.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Sets the clause and variable orders to the input order
+     */
+    static void inputOrder(Object cnf) {
+        try {
+            INPUT_ORDER.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void projectOrder(Object cnf) {
+        try {
+            PROJECT_ORDER.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void updatePositions(Object cnf) {
+        try {
+            UPDATE_POSITIONS.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void greedyOrder(Object cnf) {
+        try {
+            GREEDY_ORDER.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static long barycentre(Object cnf, boolean lockVars, Object graph) {
+        try {
+            return (long) BARYCENTRE.invoke(cnf, lockVars, graph);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Runs the k-merge search
+     */
+    static void kMerge(Object cnf, Object graph) {
+        try {
+            K_MERGE.invoke(cnf, graph, false);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int countK(Object cnf, Object graph) {
+        try {
+            return (int) COUNT_K.invoke(cnf, graph, false);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int[] shiftClause(Object cnf, int[] order, int position) {
+        try {
+            return (int[]) SHIFT_CLAUSE.invoke(cnf, order, position);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    /**
+     * Runs the given number of rounds of shiftClauses with a new evaluator
+     * for the current order
+     */
+    static int shiftClauses(Object cnf, Object graph, int rounds) {
+        try {
+            Object eval = NEW_EVALUATOR.invoke(cnf, graph);
+            return (int) SHIFT_CLAUSES.invoke(cnf, eval, rounds);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static void applyOrder(Object cnf) {
+        try {
+            APPLY_ORDER.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    static int[] order(Object cnf) {
+        try {
+            return (int[]) GET_ORDER.invoke(cnf);
+        } catch (Throwable e) {
+            throw rethrow(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if (e instanceof RuntimeException) return (RuntimeException) e;
+        if (e instanceof Error) throw (Error) e;
+        return new IllegalStateException(e);
+    }
+}
@@ -0,0 +1,77 @@
+package orderedcnf.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The steps that work on a finished total order, the one found by k-merge
+ * from the input order: counting k, shifting clauses left (one pass of the
+ * old shiftClause loop, and one round with a KEvaluator) and building the
+ * cut sets. The order and its k are restored before each invocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EvaluationBenchmark extends InstanceState {
+    Object cnf;
+    Object graph;
+    int[] merged; // the order found by k-merge
+
+    @Setup
+    public void order() {
+        cnf = Core.parse(file.getPath());
+        graph = Core.graph(cnf);
+        Core.inputOrder(cnf);
+        Core.kMerge(cnf, graph);
+        Core.projectOrder(cnf);
+        Core.countK(cnf, graph);
+        merged = Core.order(cnf).clone();
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        int[] order = Core.order(cnf);
+        System.arraycopy(merged, 0, order, 0, order.length);
+        Core.projectOrder(cnf);
+        Core.countK(cnf, graph);
+    }
+
+    @Benchmark
+    public int countK() {
+        return Core.countK(cnf, graph);
+    }
+
+    @Benchmark
+    public int[] shiftClausePass() {
+        int[] order = Core.order(cnf);
+        for (int i = 1; i < order.length; i++) {
+            if (order[i] > 0) {
+                Core.shiftClause(cnf, order, i);
+            }
+        }
+        return order;
+    }
+
+    @Benchmark
+    public int shiftClausesRound() {
+        return Core.shiftClauses(cnf, graph, 1);
+    }
+
+    @Benchmark
+    public Object applyOrder() {
+        Core.applyOrder(cnf);
+        return cnf;
+    }
+}
@@ -0,0 +1,38 @@
+package orderedcnf.bench;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+
+/**
+ * A random formula of the given size and density (clauses per variable),
+ * written once per trial. 4.26 is the 3-SAT threshold, 2 is sparse.
+ * Larger sizes can be given with -p variables=...; shifting clauses with a
+ * KEvaluator grows about quadratically with the size of random formulas.
+ */
+@State(Scope.Thread)
+public class InstanceState {
+    @Param({"1000", "4000", "16000"})
+    public int variables;
+
+    @Param({"2.0", "4.26"})
+    public double density;
+
+    File file;
+
+    @Setup
+    public void writeInstance() throws IOException {
+        file = RandomCnf.write(variables, density, 42);
+    }
+
+    @TearDown
+    public void deleteInstance() {
+        file.delete();
+    }
+}
@@ -0,0 +1,63 @@
+package orderedcnf.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.Warmup;
+
+
+/**
+ * The steps that build an order: the greedy order, one barycentre round and
+ * the k-merge search. Each invocation starts from the input order.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OrderingBenchmark extends InstanceState {
+    Object cnf;
+    Object graph;
+
+    @Setup
+    public void parse() {
+        cnf = Core.parse(file.getPath());
+        graph = Core.graph(cnf);
+    }
+
+    @Setup(Level.Invocation)
+    public void reset() {
+        Core.inputOrder(cnf);
+    }
+
+    @Benchmark
+    public Object greedy() {
+        Core.greedyOrder(cnf);
+        return cnf;
+    }
+
+    /**
+     * One round: clauses by their variables, then variables by their clauses
+     */
+    @Benchmark
+    public long barycentreRound() {
+        long moved = Core.barycentre(cnf, true, graph);
+        Core.updatePositions(cnf);
+        moved += Core.barycentre(cnf, false, graph);
+        Core.updatePositions(cnf);
+        return moved;
+    }
+
+    @Benchmark
+    public Object kMerge() {
+        Core.kMerge(cnf, graph);
+        return cnf;
+    }
+}
@@ -0,0 +1,44 @@
+package orderedcnf.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+
+/**
+ * Random 3-SAT formulas in DIMACS format for the benchmarks. The same
+ * size, density and seed always give the same formula.
+ */
+final class RandomCnf {
+    static final int CLAUSE_SIZE = 3;
+
+    private RandomCnf() {
+    }
+
+    /**
+     * Writes a random formula with the given number of variables and
+     * density * variables clauses to a temporary file, deleted on exit
+     */
+    static File write(int variables, double density, long seed) throws IOException {
+        int clauses = (int) Math.round(density * variables);
+        File file = File.createTempFile("bench-" + variables + "-" + density + "-", ".cnf");
+        file.deleteOnExit();
+        Random rnd = new Random(seed);
+        try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), StandardCharsets.US_ASCII)) {
+            out.write("p cnf " + variables + " " + clauses + "\n");
+            StringBuilder line = new StringBuilder();
+            for (int c = 0; c < clauses; c++) {
+                line.setLength(0);
+                for (int l = 0; l < CLAUSE_SIZE; l++) {
+                    int var = 1 + rnd.nextInt(variables);
+                    line.append(rnd.nextBoolean() ? var : -var).append(' ');
+                }
+                out.write(line.append("0\n").toString());
+            }
+        }
+        return file;
+    }
+}
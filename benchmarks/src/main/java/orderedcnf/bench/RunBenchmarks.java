@@ -0,0 +1,26 @@
+package orderedcnf.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+
+/**
+ * Runs the benchmarks with the usual JMH command line options, always with
+ * the GC profiler so allocation per operation is reported alongside time.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [JMH options] [regexp]
+ * e.g. -p variables=10000 -p density=4.26 OrderingBenchmark.kMerge
+ */
+public class RunBenchmarks {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}